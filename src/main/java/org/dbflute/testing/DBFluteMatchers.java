@@ -15,20 +15,45 @@
  */
 package org.dbflute.testing;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.dbflute.Entity;
 import org.dbflute.bhv.readable.CBCall;
 import org.dbflute.cbean.ConditionBean;
 import org.dbflute.testing.matcher.ComparisonOperator;
+import org.dbflute.testing.matcher.CostModel;
+import org.dbflute.testing.matcher.HasColumnValue;
 import org.dbflute.testing.matcher.HasCondition;
+import org.dbflute.testing.matcher.HasOrScope;
 import org.dbflute.testing.matcher.HasRelation;
+import org.dbflute.testing.matcher.HasSelectiveWhereClause;
+import org.dbflute.testing.matcher.HasSubQuery;
 import org.dbflute.testing.matcher.IsColumnExpressed;
 import org.dbflute.testing.matcher.IsColumnIsNotNull;
 import org.dbflute.testing.matcher.IsColumnIsNull;
+import org.dbflute.testing.matcher.IsEntityList;
+import org.dbflute.testing.matcher.IsEstimatedCostBelow;
+import org.dbflute.testing.matcher.IsOrScopeEfficient;
+import org.dbflute.testing.matcher.IsOrderedBy;
+import org.dbflute.testing.matcher.IsPagingOrderIndexed;
+import org.dbflute.testing.matcher.IsScopeContaining;
+import org.dbflute.testing.matcher.IsSubQueryEfficient;
+import org.dbflute.testing.matcher.OrScopeQuery;
 import org.dbflute.testing.matcher.ShouldSelect;
+import org.dbflute.testing.matcher.SubQueryKind;
 import org.dbflute.testing.mock.BehaviorArgumentCaptor;
 import org.dbflute.testing.mock.BehaviorArgumentMatcher;
+import org.dbflute.testing.mock.BehaviorRecorder;
+import org.dbflute.testing.mock.CapturedCBMatcher;
+import org.dbflute.testing.mock.ConditionBeanFactory;
+import org.dbflute.testing.replay.ExpectationFile;
+import org.dbflute.testing.replay.IsRecordedStructure;
 import org.hamcrest.Matcher;
+import org.hamcrest.collection.IsCollectionWithSize;
 import org.hamcrest.core.IsCollectionContaining;
 import org.hamcrest.core.IsEqual;
+import org.hamcrest.number.OrderingComparison;
 
 /**
  * Static factory of custom matchers.
@@ -51,6 +76,16 @@ public final class DBFluteMatchers {
         return new BehaviorArgumentCaptor<T>(clazz);
     }
 
+    /**
+     * Creates a method argument captor that creates ConditionBean by {@code factory}.
+     * @param <T> the type of ConditionBean
+     * @param factory the factory of ConditionBean implementation
+     * @return captor
+     */
+    public static <T extends ConditionBean> BehaviorArgumentCaptor<T> captor(ConditionBeanFactory<T> factory) {
+        return new BehaviorArgumentCaptor<T>(factory);
+    }
+
     /**
      * Allows creating custom argument matcher that evaluates ConditionBean.
      * @param <T> the type of {@code clazz}
@@ -63,6 +98,18 @@ public final class DBFluteMatchers {
         return org.mockito.Matchers.argThat(cb(cbclass, matcher));
     }
 
+    /**
+     * Allows creating custom argument matcher that evaluates ConditionBean created by {@code factory}.
+     * @param <T> the type of ConditionBean
+     * @param factory the factory of ConditionBean implementation
+     * @param matcher the matcher to apply to ConditionBean
+     * @return <code>null</code>
+     * @see org.mockito.Matchers#argThat(Matcher)
+     */
+    public static <T extends ConditionBean> CBCall<T> argCB(ConditionBeanFactory<T> factory, Matcher<T> matcher) {
+        return org.mockito.Matchers.argThat(cb(factory, matcher));
+    }
+
     /**
      * Creates an argument matcher that evaluates ConditionBean.
      * @param cbclass class of ConditionBean implementation
@@ -74,6 +121,96 @@ public final class DBFluteMatchers {
         return new BehaviorArgumentMatcher<T>(cbclass, matcher);
     }
 
+    /**
+     * Creates an argument matcher that evaluates ConditionBean created by {@code factory}.
+     * @param factory the factory of ConditionBean implementation
+     * @param matcher the matcher to apply to ConditionBean
+     * @param <T> the type of ConditionBean
+     * @return argument matcher
+     */
+    public static <T extends ConditionBean> BehaviorArgumentMatcher<T> cb(ConditionBeanFactory<T> factory, Matcher<T> matcher) {
+        return new BehaviorArgumentMatcher<T>(factory, matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the {@link BehaviorRecorder} has any call of {@code methodName}
+     * whose lambda argument matches {@code cbCallMatcher}.
+     * <p>Example:
+     * <pre>{@code
+     * assertThat(recorder, hasCall("selectList", cb(MemberCB.class, hasCondition("memberId", equal(1)))));
+     * }</pre>
+     * @param methodName the name of Behavior method
+     * @param cbCallMatcher the matcher that evaluates lambda argument
+     */
+    public static Matcher<BehaviorRecorder> hasCall(String methodName, Matcher<?> cbCallMatcher) {
+        return BehaviorRecorder.hasCall(methodName, cbCallMatcher);
+    }
+
+    /**
+     * Creates a matcher that matches when all ConditionBeans captured by {@link BehaviorArgumentCaptor} match {@code matcher}.
+     * The captured calls are evaluated in parallel.
+     * <p>Example:
+     * <pre>{@code
+     * verify(mockBhv, atLeastOnce()).selectList(captor.capture());
+     * assertThat(captor, everyCB(hasCondition("memberId", equal(1))));
+     * }</pre>
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> CapturedCBMatcher<T> everyCB(Matcher<? super T> matcher) {
+        return CapturedCBMatcher.everyCB(matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when any ConditionBean captured by {@link BehaviorArgumentCaptor} matches {@code matcher}.
+     * The captured calls are evaluated in parallel.
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> CapturedCBMatcher<T> anyCB(Matcher<? super T> matcher) {
+        return CapturedCBMatcher.anyCB(matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the number of captured ConditionBeans matching {@code matcher}
+     * satisfies {@code countMatcher}. The captured calls are evaluated in parallel.
+     * <p>Example:
+     * <pre>{@code
+     * assertThat(captor, countCB(hasCondition("memberStatusCode", equal("FML")), is(3)));
+     * }</pre>
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param countMatcher the matcher to apply to the number of matched ConditionBeans
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> CapturedCBMatcher<T> countCB(Matcher<? super T> matcher,
+            Matcher<? super Integer> countMatcher) {
+        return CapturedCBMatcher.countCB(matcher, countMatcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has the same structure as the one recorded
+     * at {@code position} in {@code file}. Parameter values are not compared.
+     * @param file the expectation file
+     * @param position the position in the file
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsRecordedStructure<T> sameStructureAs(ExpectationFile file, int position) {
+        return IsRecordedStructure.sameStructureAs(file, position);
+    }
+
+    /**
+     * Creates a matcher that matches when the structure of ConditionBean is recorded anywhere in {@code file}.
+     * <p>Example:
+     * <pre>{@code
+     * verify(mockBhv).selectList(argCB(MemberCB.class, recordedIn(ExpectationFile.open(file))));
+     * }</pre>
+     * @param file the expectation file
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsRecordedStructure<T> recordedIn(ExpectationFile file) {
+        return IsRecordedStructure.recordedIn(file);
+    }
+
     /**
      * Creates a matcher that gets a {@link org.dbflute.cbean.cvalue.ConditionValue} of specified column
      * and pass it to subsequent matcher.
@@ -108,6 +245,159 @@ public final class DBFluteMatchers {
         return new HasRelation<T>(table, new HasCondition<T>(column, matcher));
     }
 
+    /**
+     * Creates a matcher that matches when the ConditionBean has a sub-query of {@code kind} for {@code relation}.
+     * @param kind the kind of sub-query
+     * @param relation the name of referrer or relation
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasSubQuery<T> hasSubQuery(SubQueryKind kind, String relation) {
+        return HasSubQuery.hasSubQuery(kind, relation);
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has a sub-query of {@code kind} for {@code relation}
+     * whose ConditionQuery matches {@code matcher}.
+     * @param kind the kind of sub-query
+     * @param relation the name of referrer or relation
+     * @param matcher the matcher that evaluates {@link org.dbflute.cbean.ConditionQuery} of the sub-query
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasSubQuery<T> hasSubQuery(SubQueryKind kind, String relation, Matcher<?> matcher) {
+        return HasSubQuery.hasSubQuery(kind, relation, matcher);
+    }
+
+    /**
+     * Creates a matcher that fails on {@code derivedReferrer} counts that should be {@code existsReferrer}
+     * and on correlated sub-queries without inner conditions.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsSubQueryEfficient<T> efficientSubQueries() {
+        return IsSubQueryEfficient.efficientSubQueries();
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean is ordered by exactly {@code elements}.
+     * @param elements order-by elements like {@code "MEMBER_ID desc"} or {@code "memberStatus.DISPLAY_ORDER"}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsOrderedBy<T> orderedBy(String... elements) {
+        return IsOrderedBy.orderedBy(elements);
+    }
+
+    /**
+     * Creates a matcher that fails when a paging ConditionBean is not ordered by a prefix of primary or unique key.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsPagingOrderIndexed<T> pagingOrderIsIndexed() {
+        return IsPagingOrderIndexed.pagingOrderIsIndexed();
+    }
+
+    /**
+     * Creates a matcher that matches when the where clause narrows rows by a key or foreign key.
+     * @param <T> the type of ConditionBean
+     * @see org.dbflute.testing.mock.FullTableWriteGuard
+     */
+    public static <T extends ConditionBean> HasSelectiveWhereClause<T> hasSelectiveWhereClause() {
+        return HasSelectiveWhereClause.hasSelectiveWhereClause();
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has an or-scope that refers to exactly {@code columns}.
+     * @param columns the columns like {@code "MEMBER_NAME"} or {@code "memberStatus.memberStatusName"}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasOrScope<T> hasOrScope(String... columns) {
+        return HasOrScope.hasOrScope(columns);
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has an or-scope that matches {@code matcher}.
+     * @param matcher the matcher of {@link OrScopeQuery}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasOrScope<T> hasOrScope(Matcher<? super OrScopeQuery> matcher) {
+        return HasOrScope.hasOrScope(matcher);
+    }
+
+    /**
+     * Creates a matcher that fails when an or-scope has a leading wildcard or mixes columns without a common index.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsOrScopeEfficient<T> efficientOrScopes() {
+        return IsOrScopeEfficient.efficientOrScopes();
+    }
+
+    /**
+     * Creates a matcher that matches when the rows scanned estimated by {@code model} is below {@code budget}.
+     * @param model the cost model
+     * @param budget the budget of rows scanned
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsEstimatedCostBelow<T> estimatedCostBelow(CostModel model, long budget) {
+        return IsEstimatedCostBelow.estimatedCostBelow(model, budget);
+    }
+
+    /**
+     * Creates a matcher that matches when the rows scanned estimated by the default cost model is below {@code budget}.
+     * @param budget the budget of rows scanned
+     * @param <T> the type of ConditionBean
+     * @see CostModel#getDefault()
+     */
+    public static <T extends ConditionBean> IsEstimatedCostBelow<T> estimatedCostBelow(long budget) {
+        return IsEstimatedCostBelow.estimatedCostBelow(budget);
+    }
+
+    /**
+     * Allows creating custom argument matcher that evaluates the list of entities given to batch Behavior methods.
+     * @param <E> the type of entity
+     * @param matcher the matcher to apply to the list
+     * @return <code>null</code>
+     * @see org.mockito.Matchers#argThat(Matcher)
+     */
+    public static <E extends Entity> List<E> argEntities(Matcher<List<E>> matcher) {
+        return org.mockito.Matchers.argThat(matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the column value of the entity matches {@code matcher}.
+     * @param column the name of column
+     * @param matcher the matcher to apply to the value
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> HasColumnValue<E> hasColumnValue(String column, Matcher<?> matcher) {
+        return HasColumnValue.hasColumnValue(column, matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the column value of the entity equals {@code value}.
+     * @param column the name of column
+     * @param value the expected value
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> HasColumnValue<E> hasColumnValue(String column, Object value) {
+        return HasColumnValue.hasColumnValue(column, value);
+    }
+
+    /**
+     * Creates a matcher that matches when every entity in the list matches {@code matcher}.
+     * The evaluation stops at the first mismatch.
+     * @param matcher the matcher to apply to each entity
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> IsEntityList<E> everyEntity(Matcher<? super E> matcher) {
+        return IsEntityList.everyEntity(matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when all entities in the list have the same modified properties,
+     * so that DBFlute executes them as one JDBC batch.
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> IsEntityList<E> uniformModifiedProperties() {
+        return IsEntityList.uniformModifiedProperties();
+    }
+
     /**
      * Creates a matcher that matches when the examined column has
      * EQUAL condition with value matched with the specified {@code matcher}.
@@ -330,6 +620,121 @@ public final class DBFluteMatchers {
         return notIn(IsCollectionContaining.hasItems(items));
     }
 
+    /**
+     * Creates a matcher that matches when the examined column has
+     * IN condition with exactly the same values as {@code values}, in any order.
+     * Values are looked up in a hash set, so this is suitable for large scope.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_InScope(memberIdList);
+     * assertThat(cb, hasCondition("memberId", inExactly(memberIdList)));
+     * }</pre>
+     * @param values the expected values of condition
+     */
+    public static IsColumnExpressed inExactly(Collection<?> values) {
+        return in(IsScopeContaining.exactly(values));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * IN condition containing all of {@code values}, in any order.
+     * Values are looked up in a hash set, so this is suitable for large scope.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_InScope(Arrays.asList(1, 2, 3));
+     * assertThat(cb, hasCondition("memberId", inContainsAll(Arrays.asList(1, 3))));
+     * }</pre>
+     * @param values the expected values of condition
+     */
+    public static IsColumnExpressed inContainsAll(Collection<?> values) {
+        return in(IsScopeContaining.containsAll(values));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * IN condition with number of values matched with the specified {@code matcher}.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_InScope(Arrays.asList(1, 2, 3));
+     * assertThat(cb, hasCondition("memberId", inSize(greaterThan(2))));
+     * }</pre>
+     * @param matcher a matcher that evaluates the number of values
+     */
+    public static IsColumnExpressed inSize(Matcher<? super Integer> matcher) {
+        return in(IsCollectionWithSize.hasSize(matcher));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * IN condition with {@code maxSize} or less values.
+     * Use this to guard against exceeding the limit of bind parameters of database.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_InScope(memberIdList);
+     * assertThat(cb, hasCondition("memberId", inSizeAtMost(1000)));
+     * }</pre>
+     * @param maxSize the maximum number of values
+     */
+    public static IsColumnExpressed inSizeAtMost(int maxSize) {
+        return inSize(OrderingComparison.lessThanOrEqualTo(maxSize));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * NOT_IN condition with exactly the same values as {@code values}, in any order.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_NotInScope(memberIdList);
+     * assertThat(cb, hasCondition("memberId", notInExactly(memberIdList)));
+     * }</pre>
+     * @param values the expected values of condition
+     */
+    public static IsColumnExpressed notInExactly(Collection<?> values) {
+        return notIn(IsScopeContaining.exactly(values));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * NOT_IN condition containing all of {@code values}, in any order.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_NotInScope(Arrays.asList(1, 2, 3));
+     * assertThat(cb, hasCondition("memberId", notInContainsAll(Arrays.asList(1, 3))));
+     * }</pre>
+     * @param values the expected values of condition
+     */
+    public static IsColumnExpressed notInContainsAll(Collection<?> values) {
+        return notIn(IsScopeContaining.containsAll(values));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * NOT_IN condition with number of values matched with the specified {@code matcher}.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_NotInScope(Arrays.asList(1, 2, 3));
+     * assertThat(cb, hasCondition("memberId", notInSize(greaterThan(2))));
+     * }</pre>
+     * @param matcher a matcher that evaluates the number of values
+     */
+    public static IsColumnExpressed notInSize(Matcher<? super Integer> matcher) {
+        return notIn(IsCollectionWithSize.hasSize(matcher));
+    }
+
+    /**
+     * Creates a matcher that matches when the examined column has
+     * NOT_IN condition with {@code maxSize} or less values.
+     * <p>Example:
+     * <pre>{@code
+     * cb.query().setMemberId_NotInScope(memberIdList);
+     * assertThat(cb, hasCondition("memberId", notInSizeAtMost(1000)));
+     * }</pre>
+     * @param maxSize the maximum number of values
+     */
+    public static IsColumnExpressed notInSizeAtMost(int maxSize) {
+        return notInSize(OrderingComparison.lessThanOrEqualTo(maxSize));
+    }
+
     /**
      * Creates a matcher that matches when the examined column has
      * LIKE condition with value matched with the specified {@code matcher}.
@@ -25,6 +25,13 @@ import java.lang.annotation.Target;
 /**
  * Test class annotation indicates that the tests requires a database connection
  * and should be treated as integration tests.
+ * <p>
+ * {@link org.dbflute.testing.rule.RollbackDatabase} and {@link org.dbflute.testing.rule.TemplateDatabase}
+ * provide an embedded database for such tests.
+ * <p>
+ * On JUnit Jupiter, use {@link org.dbflute.testing.jupiter.DatabaseTest} instead, which is annotated with this
+ * and also tags the class as {@value #TAG} and holds the resource lock {@value #RESOURCE} in read mode.
+ * This annotation has no dependency on Jupiter, so JUnit 4 tests do not need it on the classpath.
  * 
  * @author taktos
  *
@@ -35,4 +42,9 @@ import java.lang.annotation.Target;
 @Documented
 public @interface DatabaseTests {
 
+    /** The tag for JUnit Jupiter. */
+    String TAG = "database";
+
+    /** The key of the resource lock for JUnit Jupiter. */
+    String RESOURCE = "org.dbflute.testing.database";
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.category;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * Filter that runs the test classes of one shard out of N forks.
+ *
+ * <p>
+ * Test classes recorded in {@link TimingHistory} are assigned to shards so that the total duration is balanced,
+ * longest first to the least loaded shard. Classes in the category {@link DatabaseTests}
+ * (see {@link TestCategories#isDatabaseTest(Class)}) are assigned only to the first {@code databaseShards} shards, so at most that many forks access the database at the same time,
+ * and other classes fill all shards around them.
+ * Classes not recorded yet are assigned by the hash of the class name.
+ * All forks read the same history, so they agree on the assignment without communication.
+ * The history must not change while forks start; forks only stage their durations,
+ * which are merged when the last fork finishes (see {@link TimingHistory}).
+ * The history is read once when the filter is created, and the assignment is not recomputed.
+ *
+ * <pre class="code"><code class="java">
+ * // fork 2 of 4, database tests on 1 fork
+ * Filter filter = new ShardFilter(new TimingHistory(new File("target/test-timings.properties")), 2, 4, 1);
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class ShardFilter extends Filter {
+
+    /** System property of the index of this shard (0-origin). */
+    public static final String INDEX_PROPERTY = "dbflute.shard.index";
+    /** System property of the number of shards. */
+    public static final String COUNT_PROPERTY = "dbflute.shard.count";
+    /** System property of the number of shards which run database tests. */
+    public static final String DATABASE_SHARDS_PROPERTY = "dbflute.shard.databaseShards";
+    /** System property of the path of timing history file. */
+    public static final String HISTORY_PROPERTY = "dbflute.shard.history";
+    /** Default path of timing history file. */
+    public static final String DEFAULT_HISTORY = "target/test-timings.properties";
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final int databaseShards;
+    private final Map<String, Integer> assignment;
+
+    /**
+     * Creates a new filter.
+     * @param history the timing history
+     * @param shardIndex the index of this shard (0-origin)
+     * @param shardCount the number of shards
+     * @param databaseShards the maximum number of shards that run {@link DatabaseTests}
+     * @throws IllegalArgumentException the arguments are out of range
+     */
+    public ShardFilter(TimingHistory history, int shardIndex, int shardCount, int databaseShards) {
+        if (shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        if (databaseShards <= 0) {
+            throw new IllegalArgumentException("databaseShards must be positive: " + databaseShards);
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.databaseShards = Math.min(databaseShards, shardCount);
+        this.assignment = assign(history.load());
+    }
+
+    /**
+     * Creates a filter configured by system properties.
+     * If {@value #COUNT_PROPERTY} is not set, the filter runs all tests as a single shard.
+     * @return a new filter
+     */
+    public static ShardFilter fromSystemProperties() {
+        int count = Integer.getInteger(COUNT_PROPERTY, 1);
+        int index = Integer.getInteger(INDEX_PROPERTY, 0);
+        int databaseShards = Integer.getInteger(DATABASE_SHARDS_PROPERTY, count);
+        File file = new File(System.getProperty(HISTORY_PROPERTY, DEFAULT_HISTORY));
+        return new ShardFilter(new TimingHistory(file), index, count, databaseShards);
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        Class<?> testClass = description.getTestClass();
+        if (testClass != null) {
+            return shardOf(testClass) == shardIndex;
+        }
+        for (Description child : description.getChildren()) {
+            if (shouldRun(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of this shard.
+     * @return the index of shard (0-origin)
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * Returns the number of shards.
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    @Override
+    public String describe() {
+        return "shard " + shardIndex + " of " + shardCount;
+    }
+
+    /**
+     * Returns the shard of {@code testClass}.
+     * @param testClass the test class
+     * @return the index of shard
+     */
+    public int shardOf(Class<?> testClass) {
+        Integer shard = assignment.get(testClass.getName());
+        if (shard != null) {
+            return shard;
+        }
+        int range = isDatabaseTest(testClass) ? databaseShards : shardCount;
+        return (testClass.getName().hashCode() & Integer.MAX_VALUE) % range;
+    }
+
+    private Map<String, Integer> assign(Map<String, Long> durations) {
+        List<Map.Entry<String, Long>> databaseClasses = new ArrayList<Map.Entry<String, Long>>();
+        List<Map.Entry<String, Long>> otherClasses = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            Class<?> testClass = findClass(entry.getKey());
+            if (testClass == null) {
+                // removed or renamed
+                continue;
+            }
+            (isDatabaseTest(testClass) ? databaseClasses : otherClasses).add(entry);
+        }
+        long[] loads = new long[shardCount];
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        assign(databaseClasses, loads, databaseShards, map);
+        assign(otherClasses, loads, shardCount, map);
+        return map;
+    }
+
+    private static void assign(List<Map.Entry<String, Long>> classes, long[] loads, int range, Map<String, Integer> map) {
+        Collections.sort(classes, LONGEST_FIRST);
+        for (Map.Entry<String, Long> entry : classes) {
+            int lightest = 0;
+            for (int i = 1; i < range; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            loads[lightest] += entry.getValue();
+            map.put(entry.getKey(), lightest);
+        }
+    }
+
+    /** Longest first, and by name for the same duration, so that every fork gets the same order. */
+    private static final Comparator<Map.Entry<String, Long>> LONGEST_FIRST = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+            int result = o2.getValue().compareTo(o1.getValue());
+            return result != 0 ? result : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    private static boolean isDatabaseTest(Class<?> testClass) {
+        return TestCategories.isDatabaseTest(testClass);
+    }
+
+    private Class<?> findClass(String className) {
+        try {
+            return Class.forName(className, false, ShardFilter.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.category;
+
+import java.io.File;
+
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+/**
+ * Suite that runs the classes of the current shard and records their durations.
+ *
+ * <p>
+ * The shard is configured by system properties of {@link ShardFilter#fromSystemProperties()}.
+ * The duration of each class includes {@code @BeforeClass}, {@code @AfterClass} and class rules.
+ * After the run, the durations are staged next to the timing history,
+ * and the fork that finishes last merges the durations of all forks into the history for the next run.
+ *
+ * <pre class="code"><code class="java">
+ * &#064;RunWith(ShardedSuite.class)
+ * &#064;SuiteClasses({ MemberBhvTest.class, MemberServiceTest.class, MemberMatcherTest.class })
+ * public class AllTests {
+ * }
+ * </code></pre>
+ * Run each fork with {@code -Ddbflute.shard.index=N -Ddbflute.shard.count=4 -Ddbflute.shard.databaseShards=1}.
+ *
+ * @author taktos
+ *
+ */
+public class ShardedSuite extends Suite {
+
+    private final TimingHistory history;
+    private final ShardFilter filter;
+    private volatile TimingHistory.Recorder recorder;
+
+    /**
+     * Called reflectively by JUnit.
+     * @param klass the suite class
+     * @param builder the builder of runners
+     * @throws InitializationError the suite is invalid
+     */
+    public ShardedSuite(Class<?> klass, RunnerBuilder builder) throws InitializationError {
+        super(klass, builder);
+        this.history = new TimingHistory(new File(System.getProperty(ShardFilter.HISTORY_PROPERTY,
+                ShardFilter.DEFAULT_HISTORY)));
+        this.filter = ShardFilter.fromSystemProperties();
+        try {
+            filter(filter);
+        } catch (NoTestsRemainException e) {
+            // nothing assigned to this shard
+        }
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+        recorder = history.listener(filter.getShardIndex(), filter.getShardCount());
+        notifier.addListener(recorder);
+        try {
+            super.run(notifier);
+        } finally {
+            notifier.removeListener(recorder);
+            recorder.flush();
+        }
+    }
+
+    /**
+     * Runs a test class, measuring it from before its class-level setup to after its class-level teardown.
+     */
+    @Override
+    protected void runChild(Runner runner, RunNotifier notifier) {
+        String className = runner.getDescription().getClassName();
+        recorder.classStarted(className);
+        try {
+            super.runChild(runner, notifier);
+        } finally {
+            recorder.classFinished(className);
+        }
+    }
+}
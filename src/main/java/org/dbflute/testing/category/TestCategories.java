@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.category;
+
+import java.lang.annotation.Annotation;
+
+import org.junit.experimental.categories.Category;
+
+/**
+ * Helper to find the categories of test classes.
+ *
+ * @author taktos
+ *
+ */
+public final class TestCategories {
+
+    private TestCategories() {
+    }
+
+    /**
+     * Returns whether {@code testClass} is a database test: {@link DatabaseTests} is in its {@link Category}
+     * or that of a superclass, or the class is annotated with {@link DatabaseTests} directly
+     * or with an annotation annotated with it, e.g. {@link org.dbflute.testing.jupiter.DatabaseTest}.
+     * @param testClass the test class
+     * @return {@code true} if database test
+     */
+    public static boolean isDatabaseTest(Class<?> testClass) {
+        for (Class<?> clazz = testClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            if (clazz.isAnnotationPresent(DatabaseTests.class)) {
+                return true;
+            }
+            for (Annotation annotation : clazz.getDeclaredAnnotations()) {
+                if (annotation.annotationType().isAnnotationPresent(DatabaseTests.class)) {
+                    return true;
+                }
+            }
+            Category category = clazz.getAnnotation(Category.class);
+            if (category == null) {
+                continue;
+            }
+            for (Class<?> value : category.value()) {
+                if (DatabaseTests.class.isAssignableFrom(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
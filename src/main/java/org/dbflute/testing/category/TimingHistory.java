@@ -0,0 +1,394 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.category;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Recorded duration of each test class, kept in a local properties file.
+ *
+ * <p>
+ * The file maps a class name to its duration in milliseconds.
+ * Each run updates only the classes it ran, smoothing the new duration with the recorded one.
+ *
+ * <p>
+ * Forks of a sharded run must all read the same durations, so they do not update the file while running.
+ * The listener of each fork stages its durations into a separate file next to the history
+ * (see {@link #stage(Map, int, int)}), and the fork that finishes last merges all staged files into the history.
+ * A single shard merges as soon as it finishes.
+ * If a fork crashed before staging, the staged files of the other forks are merged by the next complete run,
+ * or by {@link #mergeStaged()}, e.g. a build step that runs
+ * {@code java org.dbflute.testing.category.TimingHistory target/test-timings.properties}.
+ *
+ * @author taktos
+ *
+ */
+public class TimingHistory {
+
+    private static final String STAGED_SUFFIX = ".staged";
+
+    private final File file;
+    private final Pattern shardPattern;
+
+    /**
+     * Creates a new history of {@code file}.
+     * @param file the history file, which does not need to exist
+     */
+    public TimingHistory(File file) {
+        this.file = file;
+        this.shardPattern = Pattern.compile(Pattern.quote(file.getName()) + "\\.shard(\\d+)of(\\d+)\\..*"
+                + Pattern.quote(STAGED_SUFFIX));
+    }
+
+    /**
+     * Loads the recorded durations.
+     * @return the map of class name and duration in milliseconds, empty if the file does not exist
+     * @throws IllegalStateException failed to read the file
+     */
+    public Map<String, Long> load() {
+        return load(file);
+    }
+
+    private static Map<String, Long> load(File file) {
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        Properties props = new Properties();
+        try {
+            InputStream in = Files.newInputStream(file.toPath());
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read timing history: " + file, e);
+        }
+        Map<String, Long> map = new HashMap<String, Long>();
+        for (String name : props.stringPropertyNames()) {
+            try {
+                map.put(name, Long.valueOf(props.getProperty(name).trim()));
+            } catch (NumberFormatException e) {
+                // broken entry. it will be recorded again
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Merges {@code durations} into the file.
+     * A recorded duration is replaced with the average of recorded and new one.
+     * Do not call this while other forks may be reading the file; use {@link #stage(Map)} instead.
+     * @param durations the map of class name and duration in milliseconds
+     * @throws IllegalStateException failed to update the file
+     */
+    public void merge(final Map<String, Long> durations) {
+        if (durations.isEmpty()) {
+            return;
+        }
+        locked(new Update() {
+            @Override
+            public void run(File dir) throws IOException {
+                write(update(load(), durations), dir);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code durations} into a new staged file next to the history, without changing the history.
+     * @param durations the map of class name and duration in milliseconds
+     * @throws IllegalStateException failed to write the file
+     */
+    public void stage(Map<String, Long> durations) {
+        if (durations.isEmpty()) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        try {
+            Files.createDirectories(dir.toPath());
+            writeStaged(durations, file.getName() + ".", dir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot stage timing history: " + file, e);
+        }
+    }
+
+    /**
+     * Writes {@code durations} of a fork into a new staged file next to the history,
+     * and merges all staged files into the history if every shard of {@code shardCount} has staged.
+     * The staged file is written even if {@code durations} is empty, to mark the shard as finished.
+     * @param durations the map of class name and duration in milliseconds
+     * @param shardIndex the index of the shard of the fork (0-origin)
+     * @param shardCount the number of shards
+     * @throws IllegalStateException failed to update the file
+     */
+    public void stage(final Map<String, Long> durations, final int shardIndex, final int shardCount) {
+        locked(new Update() {
+            @Override
+            public void run(File dir) throws IOException {
+                writeStaged(durations, file.getName() + ".shard" + shardIndex + "of" + shardCount + ".", dir);
+                Set<Integer> finished = new HashSet<Integer>();
+                File[] stagedFiles = dir.listFiles();
+                for (File staged : stagedFiles != null ? stagedFiles : new File[0]) {
+                    Matcher matcher = shardPattern.matcher(staged.getName());
+                    if (matcher.matches() && Integer.parseInt(matcher.group(2)) == shardCount) {
+                        finished.add(Integer.valueOf(matcher.group(1)));
+                    }
+                }
+                if (finished.size() >= shardCount) {
+                    mergeStaged(dir);
+                }
+            }
+        });
+    }
+
+    private void writeStaged(Map<String, Long> durations, String prefix, File dir) throws IOException {
+        Properties props = new Properties();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            props.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        store(props, File.createTempFile(prefix, STAGED_SUFFIX, dir));
+    }
+
+    /**
+     * Merges all staged files into the history and deletes them.
+     * Forks of a sharded run do it automatically when the last one finishes,
+     * so call this only to merge the staged files left by an incomplete run.
+     * Durations of the same class in multiple staged files are summed up before merged.
+     * @throws IllegalStateException failed to update the file
+     */
+    public void mergeStaged() {
+        locked(new Update() {
+            @Override
+            public void run(File dir) throws IOException {
+                mergeStaged(dir);
+            }
+        });
+    }
+
+    private void mergeStaged(File dir) throws IOException {
+        File[] stagedFiles = dir.listFiles();
+        if (stagedFiles == null) {
+            return;
+        }
+        Map<String, Long> durations = new HashMap<String, Long>();
+        List<File> merged = new ArrayList<File>();
+        for (File staged : stagedFiles) {
+            if (!staged.getName().startsWith(file.getName() + ".") || !staged.getName().endsWith(STAGED_SUFFIX)) {
+                continue;
+            }
+            for (Map.Entry<String, Long> entry : load(staged).entrySet()) {
+                Long total = durations.get(entry.getKey());
+                durations.put(entry.getKey(), total == null ? entry.getValue() : total + entry.getValue());
+            }
+            merged.add(staged);
+        }
+        if (merged.isEmpty()) {
+            return;
+        }
+        write(update(load(), durations), dir);
+        for (File staged : merged) {
+            Files.deleteIfExists(staged.toPath());
+        }
+    }
+
+    /**
+     * Merges the staged files into the history file of {@code args[0]},
+     * or {@value ShardFilter#DEFAULT_HISTORY} if omitted.
+     * @param args the path of the history file
+     */
+    public static void main(String[] args) {
+        new TimingHistory(new File(args.length > 0 ? args[0] : ShardFilter.DEFAULT_HISTORY)).mergeStaged();
+    }
+
+    private interface Update {
+        void run(File dir) throws IOException;
+    }
+
+    private void locked(Update update) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File lockFile = new File(dir, file.getName() + ".lock");
+        try {
+            Files.createDirectories(dir.toPath());
+            FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                FileLock lock = channel.lock();
+                try {
+                    update.run(dir);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot update timing history: " + file, e);
+        }
+    }
+
+    private Properties update(Map<String, Long> recorded, Map<String, Long> durations) {
+        Properties props = new Properties();
+        for (Map.Entry<String, Long> entry : recorded.entrySet()) {
+            props.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            Long old = recorded.get(entry.getKey());
+            long duration = old == null ? entry.getValue() : (old + entry.getValue()) / 2;
+            props.setProperty(entry.getKey(), String.valueOf(duration));
+        }
+        return props;
+    }
+
+    private void write(Properties props, File dir) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            store(props, temp);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static void store(Properties props, File target) throws IOException {
+        OutputStream out = Files.newOutputStream(target.toPath());
+        try {
+            props.store(out, "duration of test classes in milliseconds");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Creates a listener of a single shard, which measures the duration of each test class
+     * and merges them into the history when the run finishes.
+     * @return a new listener
+     */
+    public Recorder listener() {
+        return listener(0, 1);
+    }
+
+    /**
+     * Creates a listener of a fork, which measures the duration of each test class
+     * and stages them when the run finishes (see {@link #stage(Map, int, int)}).
+     * @param shardIndex the index of the shard of the fork (0-origin)
+     * @param shardCount the number of shards
+     * @return a new listener
+     */
+    public Recorder listener(int shardIndex, int shardCount) {
+        return new Recorder(shardIndex, shardCount);
+    }
+
+    /**
+     * Listener that measures the duration of each test class, from the start of its first test to the finish of its last test.
+     * A runner that knows when a class starts and finishes, e.g. {@link ShardedSuite}, calls
+     * {@link #classStarted(String)} and {@link #classFinished(String)} to include {@code @BeforeClass},
+     * {@code @AfterClass} and class rules as well.
+     */
+    public class Recorder extends RunListener {
+        private final int shardIndex;
+        private final int shardCount;
+        /** The start and finish in nanoseconds of each class. */
+        private final Map<String, long[]> spans = new HashMap<String, long[]>();
+        private boolean staged;
+
+        Recorder(int shardIndex, int shardCount) {
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            if (description.getClassName() != null) {
+                classStarted(description.getClassName());
+            }
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            if (description.getClassName() != null) {
+                classFinished(description.getClassName());
+            }
+        }
+
+        @Override
+        public void testRunFinished(Result result) {
+            flush();
+        }
+
+        /**
+         * Marks the start of {@code className} if it is earlier than the recorded start.
+         * @param className the name of test class
+         */
+        public synchronized void classStarted(String className) {
+            long now = System.nanoTime();
+            long[] span = spans.get(className);
+            if (span == null) {
+                spans.put(className, new long[] { now, now });
+            } else if (now < span[0]) {
+                span[0] = now;
+            }
+        }
+
+        /**
+         * Marks the finish of {@code className}.
+         * @param className the name of test class
+         */
+        public synchronized void classFinished(String className) {
+            long[] span = spans.get(className);
+            if (span != null) {
+                span[1] = Math.max(span[1], System.nanoTime());
+            }
+        }
+
+        /**
+         * Stages the durations measured so far, and clears them.
+         * The first call stages even if nothing was measured, to mark the shard as finished.
+         */
+        public synchronized void flush() {
+            if (spans.isEmpty() && staged) {
+                return;
+            }
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (Map.Entry<String, long[]> entry : spans.entrySet()) {
+                map.put(entry.getKey(), (entry.getValue()[1] - entry.getValue()[0]) / 1000000L);
+            }
+            spans.clear();
+            staged = true;
+            stage(map, shardIndex, shardCount);
+        }
+    }
+}
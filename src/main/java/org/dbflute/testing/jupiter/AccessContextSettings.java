@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.jupiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Settings of AccessContext that {@link DBFluteExtension} sets up for each test.
+ * <p>
+ * Annotate a test class or a test method. The annotation on the method takes precedence.
+ * Without this annotation, the user is blank and the timestamp is the current time.
+ *
+ * @author taktos
+ *
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface AccessContextSettings {
+
+    /** The name of current user. */
+    String user() default "";
+
+    /** The fixed timestamp 'yyyy-MM-dd HH:mm:ss.SSS', or blank for the current time. */
+    String timestamp() default "";
+
+    /** The name of current process. */
+    String process() default "";
+
+    /** The name of current module. */
+    String module() default "";
+}
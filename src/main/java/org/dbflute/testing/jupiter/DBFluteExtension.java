@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.jupiter;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.Timestamp;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.hook.AccessContext;
+import org.dbflute.testing.mock.BehaviorArgumentCaptor;
+import org.dbflute.testing.rule.AccessTimeProvider;
+import org.dbflute.util.DfTypeUtil;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.platform.commons.support.AnnotationSupport;
+
+/**
+ * JUnit Jupiter extension that sets up AccessContext and injects {@link BehaviorArgumentCaptor}s.
+ *
+ * <p>
+ * The AccessContext of each test is kept in the {@link ExtensionContext.Store} of the test, not in the extension,
+ * and is set to the thread executing the test. So this extension can be used with
+ * {@code junit.jupiter.execution.parallel.mode.default=concurrent}.
+ * Configure the AccessContext with {@link AccessContextSettings}.
+ * <pre>{@code
+ * @ExtendWith(DBFluteExtension.class)
+ * @AccessContextSettings(user = "admin", timestamp = "2015-04-01 12:00:00.000")
+ * class MemberServiceTest {
+ *     @Test
+ *     void register(BehaviorArgumentCaptor<MemberCB> captor, AccessContext accessContext) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author taktos
+ *
+ */
+public class DBFluteExtension implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(DBFluteExtension.class);
+    private static final String CONTEXT_KEY = "accessContext";
+    private static final String PREVIOUS_KEY = "previousAccessContext";
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        ExtensionContext.Store store = context.getStore(NAMESPACE);
+        store.put(PREVIOUS_KEY, AccessContext.getAccessContextOnThread());
+        AccessContext accessContext = getAccessContext(context);
+        AccessContext.setAccessContextOnThread(accessContext);
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        ExtensionContext.Store store = context.getStore(NAMESPACE);
+        AccessContext previous = store.remove(PREVIOUS_KEY, AccessContext.class);
+        store.remove(CONTEXT_KEY);
+        if (previous == null) {
+            AccessContext.clearAccessContextOnThread();
+        } else {
+            AccessContext.setAccessContextOnThread(previous);
+        }
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        Class<?> type = parameterContext.getParameter().getType();
+        return type == BehaviorArgumentCaptor.class || type == AccessContext.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        Parameter parameter = parameterContext.getParameter();
+        if (parameter.getType() == AccessContext.class) {
+            return getAccessContext(extensionContext);
+        }
+        return createCaptor(parameter);
+    }
+
+    /**
+     * Returns the AccessContext of the test, creating it on the first call.
+     * Parameters are resolved before {@link #beforeEach(ExtensionContext)} for constructors,
+     * so the context is created by whichever comes first.
+     */
+    private AccessContext getAccessContext(ExtensionContext context) {
+        ExtensionContext.Store store = context.getStore(NAMESPACE);
+        AccessContext accessContext = store.get(CONTEXT_KEY, AccessContext.class);
+        if (accessContext == null) {
+            accessContext = createAccessContext(findSettings(context));
+            store.put(CONTEXT_KEY, accessContext);
+        }
+        return accessContext;
+    }
+
+    private AccessContextSettings findSettings(ExtensionContext context) {
+        if (context.getTestMethod().isPresent()) {
+            AccessContextSettings settings = find(context.getTestMethod().get());
+            if (settings != null) {
+                return settings;
+            }
+        }
+        return context.getTestClass().isPresent() ? find(context.getTestClass().get()) : null;
+    }
+
+    private AccessContextSettings find(AnnotatedElement element) {
+        return AnnotationSupport.findAnnotation(element, AccessContextSettings.class).orElse(null);
+    }
+
+    private AccessContext createAccessContext(AccessContextSettings settings) {
+        AccessContext accessContext = new AccessContext();
+        Timestamp timestamp = null;
+        if (settings == null) {
+            accessContext.setAccessUser("");
+            accessContext.setAccessProcess("");
+            accessContext.setAccessModule("");
+        } else {
+            accessContext.setAccessUser(settings.user());
+            accessContext.setAccessProcess(settings.process());
+            accessContext.setAccessModule(settings.module());
+            if (!settings.timestamp().isEmpty()) {
+                timestamp = DfTypeUtil.toTimestamp(settings.timestamp());
+            }
+        }
+        return new AccessTimeProvider(timestamp).install(accessContext);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private BehaviorArgumentCaptor<?> createCaptor(Parameter parameter) {
+        Type type = parameter.getParameterizedType();
+        if (type instanceof ParameterizedType) {
+            Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (arg instanceof Class && ConditionBean.class.isAssignableFrom((Class<?>) arg)) {
+                return BehaviorArgumentCaptor.of((Class) arg);
+            }
+        }
+        throw new ParameterResolutionException("The type argument of BehaviorArgumentCaptor must be a ConditionBean class: "
+                + parameter);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.jupiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.dbflute.testing.category.DatabaseTests;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.parallel.ResourceAccessMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
+
+/**
+ * {@link DatabaseTests} for JUnit Jupiter.
+ * <p>
+ * Tags the class as {@value DatabaseTests#TAG} and holds the resource lock {@value DatabaseTests#RESOURCE}
+ * in {@link ResourceAccessMode#READ READ} mode. Database test classes run concurrently with each other,
+ * and a class that declares {@code @ResourceLock(DatabaseTests.RESOURCE)} (read-write) runs alone,
+ * e.g. a test that recreates the schema.
+ *
+ * <pre class="code"><code class="java">
+ * &#064;DatabaseTest
+ * &#064;ExtendWith(DBFluteExtension.class)
+ * class MemberBhvTest {
+ * }
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+@DatabaseTests
+@Tag(DatabaseTests.TAG)
+@ResourceLock(value = DatabaseTests.RESOURCE, mode = ResourceAccessMode.READ)
+public @interface DatabaseTest {
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.ConditionQuery;
+import org.dbflute.cbean.cvalue.ConditionValue;
+import org.dbflute.cbean.sqlclause.SqlClause;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.dbmeta.info.UniqueInfo;
+import org.dbflute.helper.beans.DfBeanDesc;
+import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.dbflute.testing.matcher.IsOrderedBy.OrderByColumn;
+
+/**
+ * Rough cost model of ConditionBean, estimating the number of rows scanned.
+ *
+ * <p>
+ * Statistics are kept in a local properties file:
+ * <pre>
+ * # rows of table
+ * MEMBER.rows = 100000
+ * # distinct values of column
+ * MEMBER.MEMBER_STATUS_CODE.distinct = 3
+ * # non-unique index, columns separated by comma
+ * MEMBER.index.IX_MEMBER_BIRTHDATE = BIRTHDATE
+ * </pre>
+ * A table without statistics has {@value #DEFAULT_ROWS} rows. A column without statistics has as many distinct values
+ * as rows if it is a single-column primary or unique key, otherwise {@value #DEFAULT_DISTINCT}.
+ *
+ * <p>
+ * The estimate follows the usual textbook rules:
+ * <ul>
+ * <li>Each condition of the base table and relations has a selectivity: {@code 1/distinct} for equal,
+ * {@code size/distinct} for in-scope, {@code 1/3} for each bound of range, {@code 1/10} for like-search and is-null,
+ * and the complement of them for negative conditions.</li>
+ * <li>The base table is read by the key (primary key, unique keys of DBMeta and indexes of statistics)
+ * whose leading columns have equal, in-scope or range conditions and read the fewest rows, or by full scan.</li>
+ * <li>Each matched row costs one lookup for each joined relation, or {@code rows/distinct} lookups
+ * if the relation does not refer to a key.</li>
+ * <li>Paging stops early if it has no order-by or is ordered by a key, and no relation has conditions.
+ * Otherwise all matched rows are read and sorted.</li>
+ * </ul>
+ * Sub-queries and manual conditions are not estimated.
+ *
+ * @author taktos
+ *
+ */
+public final class CostModel {
+
+    public static final long DEFAULT_ROWS = 1000;
+    public static final long DEFAULT_DISTINCT = 10;
+
+    /** The system property of statistics file used by {@link #getDefault()}. */
+    public static final String STATS_PROPERTY = "dbflute.testing.stats";
+
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+    private static final double FUZZY_SELECTIVITY = 1.0 / 10;
+
+    private static volatile CostModel defaultModel;
+
+    private final Map<String, Long> rows;
+    private final Map<String, Long> distincts;
+    private final Map<String, Map<String, String[]>> indexes;
+
+    private CostModel(Map<String, Long> rows, Map<String, Long> distincts, Map<String, Map<String, String[]>> indexes) {
+        this.rows = rows;
+        this.distincts = distincts;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Loads statistics from {@code file}.
+     * @param file the properties file of statistics
+     * @return the cost model
+     * @throws IllegalStateException failed to read the file
+     * @throws IllegalArgumentException the file has a malformed entry
+     */
+    public static CostModel load(File file) {
+        Properties props = new Properties();
+        try {
+            InputStream in = Files.newInputStream(file.toPath());
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read statistics: " + file, e);
+        }
+        return of(props);
+    }
+
+    /**
+     * Creates a cost model of {@code props} in the format of statistics file.
+     * @param props the statistics
+     * @return the cost model
+     * @throws IllegalArgumentException {@code props} has a malformed entry
+     */
+    public static CostModel of(Properties props) {
+        Map<String, Long> rows = new HashMap<String, Long>();
+        Map<String, Long> distincts = new HashMap<String, Long>();
+        Map<String, Map<String, String[]>> indexes = new HashMap<String, Map<String, String[]>>();
+        for (String key : props.stringPropertyNames()) {
+            String value = props.getProperty(key).trim();
+            String[] names = key.trim().split("\\.");
+            if (names.length == 2 && names[1].equals("rows")) {
+                rows.put(key(names[0]), parseCount(key, value));
+            } else if (names.length == 3 && names[2].equals("distinct")) {
+                distincts.put(key(names[0]) + "." + key(names[1]), parseCount(key, value));
+            } else if (names.length == 3 && names[1].equals("index")) {
+                Map<String, String[]> tableIndexes = indexes.get(key(names[0]));
+                if (tableIndexes == null) {
+                    tableIndexes = new LinkedHashMap<String, String[]>();
+                    indexes.put(key(names[0]), tableIndexes);
+                }
+                tableIndexes.put(names[2], value.split("\\s*,\\s*"));
+            } else {
+                throw new IllegalArgumentException("Unknown statistics '" + key + "'. Expected 'TABLE.rows',"
+                        + " 'TABLE.COLUMN.distinct' or 'TABLE.index.NAME'.");
+            }
+        }
+        return new CostModel(rows, distincts, indexes);
+    }
+
+    /**
+     * Returns the cost model of the file given by system property {@value #STATS_PROPERTY},
+     * or the one without statistics if the property is not set.
+     * @return the default cost model
+     */
+    public static CostModel getDefault() {
+        CostModel model = defaultModel;
+        if (model == null) {
+            String path = System.getProperty(STATS_PROPERTY);
+            model = path == null ? of(new Properties()) : load(new File(path));
+            defaultModel = model;
+        }
+        return model;
+    }
+
+    private static long parseCount(String key, String value) {
+        try {
+            long count = Long.parseLong(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Statistics '" + key + "' must be a positive number: " + value);
+    }
+
+    private static String key(String name) {
+        return name.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the number of rows of the table.
+     * @param meta the DBMeta of table
+     * @return the number of rows
+     */
+    public long getRows(DBMeta meta) {
+        Long count = rows.get(key(meta.getTableDbName()));
+        return count == null ? DEFAULT_ROWS : count;
+    }
+
+    /**
+     * Returns the number of distinct values of the column.
+     * @param column the column
+     * @return the number of distinct values
+     */
+    public long getDistinct(ColumnInfo column) {
+        DBMeta meta = column.getDBMeta();
+        Long count = distincts.get(key(meta.getTableDbName()) + "." + key(column.getColumnDbName()));
+        if (count != null) {
+            return Math.min(count, getRows(meta));
+        }
+        for (List<ColumnInfo> unique : getUniqueKeys(meta)) {
+            if (unique.size() == 1 && unique.get(0).equals(column)) {
+                return getRows(meta);
+            }
+        }
+        return Math.min(DEFAULT_DISTINCT, getRows(meta));
+    }
+
+    /**
+     * Estimates the cost of {@code cb}.
+     * @param cb the ConditionBean
+     * @return the estimate
+     * @throws IllegalArgumentException an index of statistics has an unknown column
+     */
+    public Estimate estimate(ConditionBean cb) {
+        List<String> steps = new ArrayList<String>();
+        DBMeta meta = cb.asDBMeta();
+        Map<ColumnInfo, Predicate> predicates = predicatesOf(cb.localCQ(), meta);
+        double tableRows = getRows(meta);
+        double matched = tableRows * selectivity(predicates.values());
+        Access access = chooseAccess(meta, predicates, tableRows);
+        double scanned = access.rows;
+        steps.add(meta.getTableDbName() + " (" + format(tableRows) + " rows): " + access.name + describe(predicates.values())
+                + " -> " + format(scanned) + " scanned, " + format(matched) + " matched");
+
+        List<Join> joins = new ArrayList<Join>();
+        collectJoins(cb.localCQ(), meta, "", 1, joins);
+        double lookupsPerRow = 0;
+        double relationSelectivity = 1;
+        for (Join join : joins) {
+            lookupsPerRow += join.lookups;
+            relationSelectivity *= join.selectivity;
+            steps.add("join " + join.path + " " + join.table + ": " + format(join.lookups) + " lookup(s) per row"
+                    + describe(join.predicates));
+        }
+        double returned = matched * relationSelectivity;
+        double joined = matched;
+
+        SqlClause sqlClause = cb.getSqlClause();
+        if (sqlClause.isFetchScopeEffective()) {
+            double fetchEnd = (double) sqlClause.getFetchPageNumber() * sqlClause.getFetchSize();
+            String order = findOrderKey(cb);
+            if (order != null && relationSelectivity == 1) {
+                // without order-by, rows come by the chosen access. with order-by, they come by the ordering key
+                double base = sqlClause.hasOrderByClause() ? tableRows : scanned;
+                double early = Math.min(base, Math.ceil(fetchEnd * base / Math.max(matched, 1)));
+                if (early < scanned) {
+                    scanned = early;
+                    steps.add("paging " + format(fetchEnd) + " rows " + order + ": stops after " + format(early) + " scanned");
+                } else {
+                    steps.add("paging " + format(fetchEnd) + " rows " + order + ": reads all matched rows");
+                }
+                joined = Math.min(matched, fetchEnd);
+            } else {
+                steps.add("paging " + format(fetchEnd) + " rows: sorts all " + format(returned) + " matched rows");
+            }
+            returned = Math.min(returned, sqlClause.getFetchSize());
+        }
+        if (!joins.isEmpty()) {
+            scanned += joined * lookupsPerRow;
+            steps.add("joins -> +" + format(joined * lookupsPerRow) + " scanned");
+        }
+        return new Estimate(Math.round(Math.ceil(scanned)), Math.round(Math.ceil(returned)), steps);
+    }
+
+    private Map<ColumnInfo, Predicate> predicatesOf(ConditionQuery cq, DBMeta meta) {
+        Map<ColumnInfo, Predicate> map = new LinkedHashMap<ColumnInfo, Predicate>();
+        DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(cq.getClass());
+        for (ColumnInfo column : meta.getColumnInfoList()) {
+            if (!beanDesc.hasPropertyDesc(column.getPropertyName())) {
+                continue;
+            }
+            Object value = beanDesc.getPropertyDesc(column.getPropertyName()).getValue(cq);
+            if (value instanceof ConditionValue) {
+                Predicate predicate = predicateOf(column, (ConditionValue) value);
+                if (predicate != null) {
+                    map.put(column, predicate);
+                }
+            }
+        }
+        return map;
+    }
+
+    private Predicate predicateOf(ColumnInfo column, ConditionValue cv) {
+        double distinct = getDistinct(column);
+        Predicate predicate = new Predicate(column);
+        if (cv.hasEqual()) {
+            predicate.add("=", 1 / distinct, Predicate.EQUAL);
+            predicate.inSize = 1;
+        }
+        Object inScope = ComparisonOperator.IN.getValue(cv);
+        if (inScope != null) {
+            int size = inScope instanceof Collection ? ((Collection<?>) inScope).size() : 1;
+            predicate.add("in(" + size + ")", Math.min(1, size / distinct), Predicate.EQUAL);
+            predicate.inSize = Math.max(predicate.inSize, size);
+        }
+        int bounds = (cv.hasGreaterThan() ? 1 : 0) + (cv.hasGreaterEqual() ? 1 : 0) + (cv.hasLessThan() ? 1 : 0)
+                + (cv.hasLessEqual() ? 1 : 0);
+        for (int i = 0; i < bounds; i++) {
+            predicate.add("range", RANGE_SELECTIVITY, Predicate.RANGE);
+        }
+        if (ComparisonOperator.LIKE.getValue(cv) != null) {
+            predicate.add("like", FUZZY_SELECTIVITY, Predicate.FILTER);
+        }
+        if (cv.hasIsNull()) {
+            predicate.add("is null", FUZZY_SELECTIVITY, Predicate.FILTER);
+        }
+        if (cv.hasNotEqual()) {
+            predicate.add("<>", 1 - 1 / distinct, Predicate.FILTER);
+        }
+        Object notInScope = ComparisonOperator.NOT_IN.getValue(cv);
+        if (notInScope != null) {
+            int size = notInScope instanceof Collection ? ((Collection<?>) notInScope).size() : 1;
+            predicate.add("not in(" + size + ")", Math.max(0, 1 - size / distinct), Predicate.FILTER);
+        }
+        if (ComparisonOperator.NOT_LIKE.getValue(cv) != null) {
+            predicate.add("not like", 1 - FUZZY_SELECTIVITY, Predicate.FILTER);
+        }
+        if (cv.hasIsNotNull()) {
+            predicate.add("is not null", 1 - FUZZY_SELECTIVITY, Predicate.FILTER);
+        }
+        return predicate.kind == Predicate.NONE ? null : predicate;
+    }
+
+    private double selectivity(Collection<Predicate> predicates) {
+        double selectivity = 1;
+        for (Predicate predicate : predicates) {
+            selectivity *= predicate.selectivity;
+        }
+        return selectivity;
+    }
+
+    private Access chooseAccess(DBMeta meta, Map<ColumnInfo, Predicate> predicates, double tableRows) {
+        Access best = new Access("full scan", tableRows);
+        Map<String, List<ColumnInfo>> keys = getKeys(meta);
+        for (Map.Entry<String, List<ColumnInfo>> entry : keys.entrySet()) {
+            List<ColumnInfo> key = entry.getValue();
+            double selectivity = 1;
+            long lookups = 1;
+            int equals = 0;
+            int used = 0;
+            for (ColumnInfo column : key) {
+                Predicate predicate = predicates.get(column);
+                if (predicate == null || predicate.kind == Predicate.FILTER) {
+                    break;
+                }
+                selectivity *= predicate.selectivity;
+                used++;
+                if (predicate.kind != Predicate.EQUAL) {
+                    break;
+                }
+                lookups *= predicate.inSize;
+                equals++;
+            }
+            if (used == 0) {
+                continue;
+            }
+            double keyRows = tableRows * selectivity;
+            if (equals == key.size() && isUnique(meta, key)) {
+                keyRows = Math.min(keyRows, lookups);
+            }
+            if (keyRows < best.rows) {
+                best = new Access("by " + entry.getKey() + " " + names(key.subList(0, used)), keyRows);
+            }
+        }
+        return best;
+    }
+
+    private void collectJoins(ConditionQuery cq, DBMeta meta, String path, double multiplier, List<Join> joins) {
+        for (Map.Entry<String, ConditionQuery> entry : MatcherHelper.getRelationQueries(cq).entrySet()) {
+            ForeignInfo foreign = MetaIndex.of(meta).findForeign(entry.getKey());
+            if (foreign == null) {
+                continue;
+            }
+            DBMeta foreignMeta = foreign.getForeignDBMeta();
+            List<ColumnInfo> joinColumns = new ArrayList<ColumnInfo>(foreign.getForeignLocalColumnInfoMap().keySet());
+            double lookups = 1;
+            if (!isUnique(foreignMeta, joinColumns)) {
+                double distinct = 1;
+                for (ColumnInfo column : joinColumns) {
+                    distinct *= getDistinct(column);
+                }
+                lookups = Math.max(1, getRows(foreignMeta) / distinct);
+            }
+            Map<ColumnInfo, Predicate> predicates = predicatesOf(entry.getValue(), foreignMeta);
+            String relationPath = path + entry.getKey();
+            joins.add(new Join(relationPath, foreignMeta.getTableDbName(), multiplier * lookups, selectivity(predicates.values()),
+                    predicates.values()));
+            collectJoins(entry.getValue(), foreignMeta, relationPath + ".", multiplier * lookups, joins);
+        }
+    }
+
+    /**
+     * Finds the key that serves the order of paging without sorting.
+     * @return the description of order, or {@code null} if sorting is needed
+     */
+    private String findOrderKey(ConditionBean cb) {
+        List<OrderByColumn> columns = OrderByColumn.listOf(cb);
+        if (columns.isEmpty()) {
+            return "without order";
+        }
+        List<ColumnInfo> ordered = new ArrayList<ColumnInfo>(columns.size());
+        for (OrderByColumn column : columns) {
+            if (!column.isBaseTable() || column.column == null || column.asc != columns.get(0).asc) {
+                return null;
+            }
+            ordered.add(column.column);
+        }
+        for (Map.Entry<String, List<ColumnInfo>> entry : getKeys(cb.asDBMeta()).entrySet()) {
+            List<ColumnInfo> key = entry.getValue();
+            if (ordered.size() <= key.size() && key.subList(0, ordered.size()).equals(ordered)) {
+                return "ordered by " + entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the primary key, unique keys and indexes of statistics, in this order.
+     * @param meta the DBMeta of table
+     * @return the map of key name to columns
+     */
+    Map<String, List<ColumnInfo>> getKeys(DBMeta meta) {
+        Map<String, List<ColumnInfo>> keys = new LinkedHashMap<String, List<ColumnInfo>>();
+        for (List<ColumnInfo> unique : getUniqueKeys(meta)) {
+            keys.put(keys.isEmpty() && meta.hasPrimaryKey() ? "primary key" : "unique key", unique);
+        }
+        Map<String, String[]> tableIndexes = indexes.get(key(meta.getTableDbName()));
+        if (tableIndexes != null) {
+            for (Map.Entry<String, String[]> entry : tableIndexes.entrySet()) {
+                List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+                for (String name : entry.getValue()) {
+                    columns.add(MetaIndex.column(meta, name));
+                }
+                keys.put(entry.getKey(), columns);
+            }
+        }
+        return keys;
+    }
+
+    private List<List<ColumnInfo>> getUniqueKeys(DBMeta meta) {
+        List<List<ColumnInfo>> list = new ArrayList<List<ColumnInfo>>();
+        if (meta.hasPrimaryKey()) {
+            list.add(meta.getPrimaryInfo().getUniqueInfo().getUniqueColumnList());
+        }
+        for (UniqueInfo unique : meta.getUniqueInfoList()) {
+            list.add(unique.getUniqueColumnList());
+        }
+        return list;
+    }
+
+    private boolean isUnique(DBMeta meta, List<ColumnInfo> columns) {
+        for (List<ColumnInfo> unique : getUniqueKeys(meta)) {
+            if (columns.containsAll(unique)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String names(List<ColumnInfo> columns) {
+        StringBuilder sb = new StringBuilder("(");
+        for (ColumnInfo column : columns) {
+            sb.append(sb.length() == 1 ? "" : ", ").append(column.getColumnDbName());
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String describe(Collection<Predicate> predicates) {
+        if (predicates.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(", where ");
+        boolean first = true;
+        for (Predicate predicate : predicates) {
+            sb.append(first ? "" : " and ").append(predicate);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    static String format(double value) {
+        if (value >= 1 || value == 0) {
+            return String.valueOf(Math.round(value));
+        }
+        return String.format(Locale.ENGLISH, "%.2f", value);
+    }
+
+    /**
+     * Estimated cost of a ConditionBean.
+     */
+    public static final class Estimate {
+        private final long rowsScanned;
+        private final long rowsReturned;
+        private final List<String> steps;
+
+        Estimate(long rowsScanned, long rowsReturned, List<String> steps) {
+            this.rowsScanned = rowsScanned;
+            this.rowsReturned = rowsReturned;
+            this.steps = Collections.unmodifiableList(steps);
+        }
+
+        /**
+         * Returns the estimated number of rows read from tables and indexes.
+         * @return the number of rows scanned
+         */
+        public long getRowsScanned() {
+            return rowsScanned;
+        }
+
+        /**
+         * Returns the estimated number of rows returned.
+         * @return the number of rows returned
+         */
+        public long getRowsReturned() {
+            return rowsReturned;
+        }
+
+        /**
+         * Returns the explanation of the estimate, one line per table, join and paging.
+         * @return the steps
+         */
+        public List<String> getSteps() {
+            return steps;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(rowsScanned).append(" rows scanned, ").append(rowsReturned).append(" returned");
+            for (String step : steps) {
+                sb.append("\n  ").append(step);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class Predicate {
+        static final int NONE = 0;
+        static final int EQUAL = 1;
+        static final int RANGE = 2;
+        static final int FILTER = 3;
+
+        final ColumnInfo column;
+        final List<String> operators = new ArrayList<String>();
+        double selectivity = 1;
+        int kind = NONE;
+        int inSize;
+
+        Predicate(ColumnInfo column) {
+            this.column = column;
+        }
+
+        void add(String operator, double selectivity, int kind) {
+            operators.add(operator);
+            this.selectivity *= selectivity;
+            // the most index-friendly condition decides the kind
+            if (this.kind == NONE || kind < this.kind) {
+                this.kind = kind;
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(column.getColumnDbName());
+            for (String operator : operators) {
+                sb.append(' ').append(operator);
+            }
+            return sb.append(" (").append(format(selectivity)).append(')').toString();
+        }
+    }
+
+    private static class Access {
+        final String name;
+        final double rows;
+
+        Access(String name, double rows) {
+            this.name = name;
+            this.rows = rows;
+        }
+    }
+
+    private static class Join {
+        final String path;
+        final String table;
+        final double lookups;
+        final double selectivity;
+        final List<Predicate> predicates;
+
+        Join(String path, String table, double lookups, double selectivity, Collection<Predicate> predicates) {
+            this.path = path;
+            this.table = table;
+            this.lookups = lookups;
+            this.selectivity = selectivity;
+            this.predicates = new ArrayList<Predicate>(predicates);
+        }
+    }
+}
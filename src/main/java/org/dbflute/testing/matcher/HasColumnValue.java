@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import org.dbflute.Entity;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.core.IsEqual;
+
+/**
+ * The matcher that evaluates a column value of the entity.
+ * <p>
+ * The value is read through {@link ColumnInfo#read(Entity)}, which is resolved once per DBMeta.
+ * Example:
+ * <pre>{@code
+ * verify(memberBhv).batchInsert(argEntities(everyEntity(hasColumnValue("memberStatusCode", "FML"))));
+ * }</pre>
+ *
+ * @param <E> the type of entity
+ * @author taktos
+ *
+ */
+public class HasColumnValue<E extends Entity> extends TimedMatcher<E> {
+
+    private final String column;
+    private final Matcher<?> matcher;
+    private volatile ResolvedColumn resolved;
+
+    public HasColumnValue(String column, Matcher<?> matcher) {
+        this.column = column;
+        this.matcher = matcher;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof Entity)) {
+            return false;
+        }
+        return matcher.matches(read((Entity) item));
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(column + " ");
+        description.appendDescriptionOf(matcher);
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof Entity)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        description.appendText(column + " ");
+        matcher.describeMismatch(read((Entity) item), description);
+    }
+
+    private Object read(Entity entity) {
+        DBMeta meta = entity.asDBMeta();
+        ResolvedColumn current = resolved;
+        if (current == null || current.meta != meta) {
+            current = new ResolvedColumn(meta, MetaIndex.column(meta, column));
+            resolved = current;
+        }
+        return current.column.read(entity);
+    }
+
+    private static class ResolvedColumn {
+        final DBMeta meta;
+        final ColumnInfo column;
+
+        ResolvedColumn(DBMeta meta, ColumnInfo column) {
+            this.meta = meta;
+            this.column = column;
+        }
+    }
+
+    /**
+     * Creates a matcher that matches when the column value of the entity matches {@code matcher}.
+     * @param column the name of column
+     * @param matcher the matcher to apply to the value
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> HasColumnValue<E> hasColumnValue(String column, Matcher<?> matcher) {
+        return new HasColumnValue<E>(column, matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when the column value of the entity equals {@code value}.
+     * @param column the name of column
+     * @param value the expected value
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> HasColumnValue<E> hasColumnValue(String column, Object value) {
+        return new HasColumnValue<E>(column, IsEqual.equalTo(value));
+    }
+}
@@ -23,10 +23,9 @@ import org.dbflute.cbean.ConditionBean;
 import org.dbflute.cbean.ConditionQuery;
 import org.dbflute.cbean.cvalue.ConditionValue;
 import org.dbflute.dbmeta.DBMeta;
-import org.dbflute.exception.DBMetaNotFoundException;
 import org.dbflute.helper.beans.DfBeanDesc;
 import org.dbflute.helper.beans.factory.DfBeanDescFactory;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 
@@ -46,7 +45,7 @@ import org.hamcrest.Matcher;
  * @author taktos
  *
  */
-public class HasCondition<T extends ConditionBean> extends BaseMatcher<T> {
+public class HasCondition<T extends ConditionBean> extends TimedMatcher<T> {
 
     protected final String column;
     protected final Matcher<?> matcher;
@@ -57,7 +56,7 @@ public class HasCondition<T extends ConditionBean> extends BaseMatcher<T> {
     }
 
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         if (item == null) {
             return false;
         }
@@ -96,22 +95,18 @@ public class HasCondition<T extends ConditionBean> extends BaseMatcher<T> {
     }
 
     private ConditionValue getConditionValue(Object item, String column) {
-        try {
-            if (item instanceof ConditionBean) {
-                return getValue(((ConditionBean) item).localCQ(), column);
-            } else if (item instanceof ConditionQuery) {
-                return getValue((ConditionQuery) item, column);
-            } else {
-                throw new IllegalArgumentException("Not a valid argument: " + item);
-            }
-        } catch (DBMetaNotFoundException e) {
-            throw new IllegalArgumentException("Column '" + column + "' does not exist.", e);
+        if (item instanceof ConditionBean) {
+            return getValue(((ConditionBean) item).localCQ(), column);
+        } else if (item instanceof ConditionQuery) {
+            return getValue((ConditionQuery) item, column);
+        } else {
+            throw new IllegalArgumentException("Not a valid argument: " + item);
         }
     }
 
     private ConditionValue getValue(ConditionQuery cq, String column) {
         DBMeta meta = MatcherHelper.getDBMeta(cq);
-        String columnPropName = meta.findColumnInfo(column).getPropertyName();
+        String columnPropName = MetaIndex.column(meta, column).getPropertyName();
 
         DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(cq.getClass());
         return (ConditionValue) beanDesc.getPropertyDesc(columnPropName).getValue(cq);
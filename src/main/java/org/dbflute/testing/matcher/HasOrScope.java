@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * The matcher that evaluates or-scope groups of the ConditionBean.
+ * <p>
+ * Columns are {@code [relation.]column}, where the relation is a path of foreign property names
+ * and the column is either DB name or property name.
+ * Example:
+ * <pre>{@code
+ * MemberCB cb = ...;
+ * cb.orScopeQuery(orCB -> {
+ *     orCB.query().setMemberName_LikeSearch("John", op -> op.likePrefix());
+ *     orCB.query().queryMemberStatus().setMemberStatusName_Equal("Formal");
+ * });
+ *
+ * assertThat(cb, hasOrScope("memberName", "memberStatus.memberStatusName"));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ * @see OrScopeQuery
+ */
+public class HasOrScope<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final String[] columns;
+    private final Matcher<?> matcher;
+
+    private HasOrScope(String[] columns, Matcher<?> matcher) {
+        this.columns = columns;
+        this.matcher = matcher;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof ConditionBean)) {
+            return false;
+        }
+        ConditionBean cb = (ConditionBean) item;
+        Set<String> expected = matcher == null ? resolveExpected(cb.asDBMeta()) : null;
+        for (OrScopeQuery orScope : OrScopeQuery.listOf(cb)) {
+            if (matcher != null ? matcher.matches(orScope) : expected.equals(new HashSet<String>(orScope.getColumns()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        if (matcher != null) {
+            description.appendText("or-scope ").appendDescriptionOf(matcher);
+        } else {
+            description.appendValueList("or-scope of ", ", ", "", columns);
+        }
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        List<OrScopeQuery> list = OrScopeQuery.listOf((ConditionBean) item);
+        if (list.isEmpty()) {
+            description.appendText("no or-scope");
+        } else {
+            description.appendValueList("or-scopes were ", ", ", "", list);
+        }
+    }
+
+    private Set<String> resolveExpected(DBMeta baseMeta) {
+        Set<String> set = new HashSet<String>();
+        for (String column : columns) {
+            set.add(resolve(baseMeta, column.trim()));
+        }
+        return set;
+    }
+
+    private String resolve(DBMeta baseMeta, String column) {
+        String[] names = column.split("\\.");
+        DBMeta meta = baseMeta;
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < names.length - 1; i++) {
+            ForeignInfo foreign = MetaIndex.of(meta).findForeign(names[i]);
+            if (foreign == null) {
+                // relation of sub-query, compared as it is
+                return column;
+            }
+            path.append(foreign.getForeignPropertyName()).append('.');
+            meta = foreign.getForeignDBMeta();
+        }
+        return path + MetaIndex.column(meta, names[names.length - 1]).getColumnDbName();
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has an or-scope that refers to exactly {@code columns}.
+     * @param columns the columns like {@code "MEMBER_NAME"} or {@code "memberStatus.memberStatusName"}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasOrScope<T> hasOrScope(String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("columns must not be empty.");
+        }
+        return new HasOrScope<T>(columns, null);
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has an or-scope that matches {@code matcher}.
+     * @param matcher the matcher of {@link OrScopeQuery}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasOrScope<T> hasOrScope(Matcher<? super OrScopeQuery> matcher) {
+        return new HasOrScope<T>(null, matcher);
+    }
+}
@@ -20,11 +20,10 @@ import java.util.Arrays;
 import org.dbflute.cbean.ConditionBean;
 import org.dbflute.cbean.ConditionQuery;
 import org.dbflute.dbmeta.DBMeta;
-import org.dbflute.exception.DBMetaNotFoundException;
 import org.dbflute.helper.beans.DfBeanDesc;
 import org.dbflute.helper.beans.exception.DfBeanPropertyNotFoundException;
 import org.dbflute.helper.beans.factory.DfBeanDescFactory;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.hamcrest.Description;
 
 /**
@@ -41,7 +40,7 @@ import org.hamcrest.Description;
  * @author taktos
  *
  */
-public class HasRelation<T extends ConditionBean> extends BaseMatcher<T> {
+public class HasRelation<T extends ConditionBean> extends TimedMatcher<T> {
 
     private final String table;
     private final HasCondition<T> subsequent;
@@ -52,17 +51,12 @@ public class HasRelation<T extends ConditionBean> extends BaseMatcher<T> {
     }
 
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         if (item == null || !(item instanceof ConditionBean)) {
             return false;
         }
         String[] tables = table.split("\\.");
-        ConditionQuery cq;
-        try {
-            cq = getCQ(((ConditionBean) item).localCQ(), tables);
-        } catch (DBMetaNotFoundException e) {
-            throw new IllegalArgumentException("No relation table '" + table + "' found.", e);
-        }
+        ConditionQuery cq = getCQ(((ConditionBean) item).localCQ(), tables);
         return subsequent.matches(cq);
     }
 
@@ -83,11 +77,12 @@ public class HasRelation<T extends ConditionBean> extends BaseMatcher<T> {
      * @param cq the instance of ConditionQuery
      * @param tables names of relation tables
      * @return query for {@code table}
+     * @throws IllegalArgumentException no relation {@code table} found
      * @throws DfBeanPropertyNotFoundException no getter method for {@code table}
      */
     protected ConditionQuery getCQ(ConditionQuery cq, String[] tables) {
         DBMeta meta = MatcherHelper.getDBMeta(cq);
-        String foreignPropertyName = meta.findForeignInfo(tables[0]).getForeignPropertyName();
+        String foreignPropertyName = MetaIndex.foreign(meta, tables[0]).getForeignPropertyName();
         DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(cq.getClass());
         ConditionQuery nested = (ConditionQuery) beanDesc.getPropertyDesc("conditionQuery" + foreignPropertyName).getValue(cq);
         if (tables.length == 1) {
@@ -16,7 +16,7 @@
 package org.dbflute.testing.matcher;
 
 import org.dbflute.cbean.ConditionBean;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.hamcrest.Description;
 
 /**
@@ -27,7 +27,7 @@ import org.hamcrest.Description;
  * @author taktos
  *
  */
-public class HasSameCondition<T extends ConditionBean> extends BaseMatcher<T> {
+public class HasSameCondition<T extends ConditionBean> extends TimedMatcher<T> {
 
     private final T cb;
 
@@ -37,7 +37,7 @@ public class HasSameCondition<T extends ConditionBean> extends BaseMatcher<T> {
 
     @SuppressWarnings("unchecked")
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         return cb.toDisplaySql().equals(((T) item).toDisplaySql());
     }
 
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.ConditionQuery;
+import org.dbflute.cbean.cvalue.ConditionValue;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.dbmeta.info.UniqueInfo;
+import org.dbflute.helper.beans.DfBeanDesc;
+import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.hamcrest.Description;
+
+/**
+ * Matches when the ConditionBean has a where clause that narrows rows by a key.
+ *
+ * <p>
+ * A where clause is selective when the base table has an equal, in-scope or range condition
+ * on the leading column of the primary key, a unique key or a foreign key, as listed in DBMeta.
+ * Conditions only on other columns, or only like-search, negative and null conditions, are not selective.
+ * Columns referred in an or-scope do not narrow rows, because another branch of the or-scope may match any row.
+ * A query update or delete without selective where clause would lock the whole table.
+ * <pre>{@code
+ * verify(memberBhv).queryDelete(argCB(MemberCB.class, hasSelectiveWhereClause()));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ * @see org.dbflute.testing.mock.FullTableWriteGuard
+ */
+public class HasSelectiveWhereClause<T extends ConditionBean> extends HasWhereClause<T> {
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof ConditionBean)) {
+            return false;
+        }
+        ConditionBean cb = (ConditionBean) item;
+        if (!hasWhereClause(cb)) {
+            return false;
+        }
+        Set<ColumnInfo> keyColumns = getKeyLeadingColumns(cb.asDBMeta());
+        for (ColumnInfo column : getNarrowedColumns(cb)) {
+            if (keyColumns.contains(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("where clause on the leading column of a key or foreign key");
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        ConditionBean cb = (ConditionBean) item;
+        if (!hasWhereClause(cb)) {
+            description.appendText("no where clause on " + cb.asTableDbName() + ", all rows are affected");
+            return;
+        }
+        List<String> names = new ArrayList<String>();
+        for (ColumnInfo column : getNarrowedColumns(cb)) {
+            names.add(column.getColumnDbName());
+        }
+        if (names.isEmpty()) {
+            description.appendText("no equal, in-scope or range condition outside or-scope on " + cb.asTableDbName());
+        } else {
+            description.appendValueList("narrowed only by ", ", ", "", names);
+            description.appendText(", none of which leads a key or foreign key of " + cb.asTableDbName());
+        }
+        String where = cb.getSqlClause().getWhereClause();
+        if (where != null) {
+            description.appendText(" (" + where.trim() + ")");
+        }
+    }
+
+    private List<ColumnInfo> getNarrowedColumns(ConditionBean cb) {
+        ConditionQuery cq = cb.localCQ();
+        Set<ColumnInfo> orScopeColumns = getOrScopeColumns(cb);
+        List<ColumnInfo> list = new ArrayList<ColumnInfo>();
+        DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(cq.getClass());
+        for (ColumnInfo column : cb.asDBMeta().getColumnInfoList()) {
+            if (!beanDesc.hasPropertyDesc(column.getPropertyName()) || orScopeColumns.contains(column)) {
+                continue;
+            }
+            Object value = beanDesc.getPropertyDesc(column.getPropertyName()).getValue(cq);
+            if (value instanceof ConditionValue && isNarrowed((ConditionValue) value)) {
+                list.add(column);
+            }
+        }
+        return list;
+    }
+
+    private boolean isNarrowed(ConditionValue cv) {
+        return cv.hasEqual() || ComparisonOperator.IN.getValue(cv) != null || cv.hasGreaterThan() || cv.hasGreaterEqual()
+                || cv.hasLessThan() || cv.hasLessEqual();
+    }
+
+    /**
+     * Returns the columns of the base table referred in or-scopes, whose condition values are in the same
+     * ConditionValue as the ones outside or-scope.
+     */
+    private Set<ColumnInfo> getOrScopeColumns(ConditionBean cb) {
+        Set<ColumnInfo> set = new HashSet<ColumnInfo>();
+        for (OrScopeQuery orScope : OrScopeQuery.listOf(cb)) {
+            if (!orScope.getPath().isEmpty()) {
+                continue;
+            }
+            for (List<OrScopeQuery.Predicate> branch : orScope.getBranches()) {
+                for (OrScopeQuery.Predicate predicate : branch) {
+                    if (predicate.getPath().isEmpty() && predicate.getColumn() != null) {
+                        set.add(predicate.getColumn());
+                    }
+                }
+            }
+        }
+        return set;
+    }
+
+    private Set<ColumnInfo> getKeyLeadingColumns(DBMeta meta) {
+        Set<ColumnInfo> set = new HashSet<ColumnInfo>();
+        if (meta.hasPrimaryKey()) {
+            set.add(meta.getPrimaryInfo().getFirstColumn());
+        }
+        for (UniqueInfo unique : meta.getUniqueInfoList()) {
+            set.add(unique.getFirstColumn());
+        }
+        for (ForeignInfo foreign : meta.getForeignInfoList()) {
+            if (foreign.isAdditionalFK()) {
+                // additional foreign keys of DBFlute have no constraint nor index in database
+                continue;
+            }
+            Iterator<ColumnInfo> columns = foreign.getLocalForeignColumnInfoMap().keySet().iterator();
+            if (columns.hasNext()) {
+                set.add(columns.next());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Creates a matcher that matches when the where clause narrows rows by a key or foreign key.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasSelectiveWhereClause<T> hasSelectiveWhereClause() {
+        return new HasSelectiveWhereClause<T>();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.ConditionQuery;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * The matcher that finds a sub-query condition of the ConditionBean and evaluates its inner conditions.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * MemberCB cb = ...;
+ * cb.query().existsPurchase(purchaseCB -> purchaseCB.query().setPurchasePrice_GreaterThan(1000));
+ *
+ * assertThat(cb, hasSubQuery(SubQueryKind.EXISTS_REFERRER, "purchase", hasCondition("purchasePrice", greaterThan(1000))));
+ * }</pre>
+ * The inner matcher is applied to the ConditionQuery of the sub-query, so {@link HasCondition} can be used.
+ * It matches when any sub-query of the kind and the relation matches.
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class HasSubQuery<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final SubQueryKind kind;
+    private final String relation;
+    private final Matcher<?> matcher;
+
+    public HasSubQuery(SubQueryKind kind, String relation, Matcher<?> matcher) {
+        this.kind = kind;
+        this.relation = relation;
+        this.matcher = matcher;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof ConditionBean)) {
+            return false;
+        }
+        for (SubQueryCondition condition : find((ConditionBean) item)) {
+            if (matcher == null || matcher.matches(condition.getSubQuery())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(kind + " sub-query of " + relation);
+        if (matcher != null) {
+            description.appendText(" with ").appendDescriptionOf(matcher);
+        }
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        List<SubQueryCondition> found = find((ConditionBean) item);
+        if (found.isEmpty()) {
+            description.appendValueList("sub-queries were [", ", ", "]", SubQueryCondition.listOf((ConditionBean) item));
+            return;
+        }
+        for (int i = 0; i < found.size(); i++) {
+            ConditionQuery subQuery = found.get(i).getSubQuery();
+            description.appendText(i == 0 ? "" : ", ").appendText(found.get(i).toString() + " ");
+            matcher.describeMismatch(subQuery, description);
+        }
+    }
+
+    private List<SubQueryCondition> find(ConditionBean cb) {
+        List<SubQueryCondition> found = new ArrayList<SubQueryCondition>();
+        for (SubQueryCondition condition : SubQueryCondition.listOf(cb)) {
+            if (condition.getKind() == kind && condition.isRelatedTo(relation)) {
+                found.add(condition);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has a sub-query of {@code kind} for {@code relation}.
+     * @param kind the kind of sub-query
+     * @param relation the name of referrer or relation, such as {@code purchase} or {@code purchaseList}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasSubQuery<T> hasSubQuery(SubQueryKind kind, String relation) {
+        return new HasSubQuery<T>(kind, relation, null);
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean has a sub-query of {@code kind} for {@code relation}
+     * whose ConditionQuery matches {@code matcher}.
+     * @param kind the kind of sub-query
+     * @param relation the name of referrer or relation, such as {@code purchase} or {@code purchaseList}
+     * @param matcher the matcher to apply to the ConditionQuery of the sub-query
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> HasSubQuery<T> hasSubQuery(SubQueryKind kind, String relation, Matcher<?> matcher) {
+        return new HasSubQuery<T>(kind, relation, matcher);
+    }
+}
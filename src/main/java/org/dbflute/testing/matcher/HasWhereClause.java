@@ -17,7 +17,7 @@ package org.dbflute.testing.matcher;
 
 import org.dbflute.cbean.ConditionBean;
 import org.dbflute.cbean.sqlclause.SqlClause;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 
@@ -27,10 +27,10 @@ import org.hamcrest.Matcher;
  * @author taktos
  *
  */
-public class HasWhereClause<T extends ConditionBean> extends BaseMatcher<T> {
+public class HasWhereClause<T extends ConditionBean> extends TimedMatcher<T> {
 
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         if (item instanceof ConditionBean) {
             return hasWhereClause((ConditionBean) item);
         }
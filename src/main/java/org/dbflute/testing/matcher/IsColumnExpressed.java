@@ -16,7 +16,7 @@
 package org.dbflute.testing.matcher;
 
 import org.dbflute.cbean.cvalue.ConditionValue;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 
@@ -31,7 +31,7 @@ import org.hamcrest.Matcher;
  * @author taktos
  *
  */
-public class IsColumnExpressed extends BaseMatcher<ConditionValue> {
+public class IsColumnExpressed extends TimedMatcher<ConditionValue> {
 
     private final ComparisonOperator operator;
     private final Matcher<?> valueMatcher;
@@ -42,7 +42,7 @@ public class IsColumnExpressed extends BaseMatcher<ConditionValue> {
     }
 
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         ConditionValue cv = (ConditionValue) item;
         Object value = operator.getValue(cv);
         return valueMatcher.matches(value);
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.dbflute.Entity;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * The matcher that evaluates the list of entities given to batch Behavior methods.
+ *
+ * <p>
+ * The list is evaluated in order and the evaluation stops at the first mismatch,
+ * so a large batch is not scanned more than needed.
+ * <pre>{@code
+ * verify(memberBhv).batchUpdate(argEntities(allOf(
+ *         everyEntity(hasColumnValue("memberStatusCode", "WDL")),
+ *         uniformModifiedProperties())));
+ * }</pre>
+ *
+ * <p>
+ * {@link #uniformModifiedProperties()} checks that all entities have the same modified properties.
+ * DBFlute splits a JDBC batch when the modified properties differ, which loses the throughput of batch.
+ *
+ * @param <E> the type of entity
+ * @author taktos
+ *
+ */
+public class IsEntityList<E extends Entity> extends TimedMatcher<List<E>> {
+
+    private final Matcher<?> elementMatcher;
+
+    private IsEntityList(Matcher<?> elementMatcher) {
+        this.elementMatcher = elementMatcher;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof Iterable)) {
+            return false;
+        }
+        return findMismatch((Iterable<?>) item) == null;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        if (elementMatcher == null) {
+            description.appendText("entities with uniform modified properties");
+        } else {
+            description.appendText("every entity ").appendDescriptionOf(elementMatcher);
+        }
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof Iterable)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        Mismatch mismatch = findMismatch((Iterable<?>) item);
+        if (mismatch == null) {
+            description.appendText("was matched");
+            return;
+        }
+        description.appendText("#" + mismatch.index + " ");
+        if (elementMatcher == null && !(mismatch.entity instanceof Entity)) {
+            description.appendText("was ").appendValue(mismatch.entity);
+        } else if (elementMatcher == null) {
+            description.appendText("modified " + mismatch.actual + " but #0 modified " + mismatch.expected);
+        } else {
+            elementMatcher.describeMismatch(mismatch.entity, description);
+        }
+    }
+
+    private Mismatch findMismatch(Iterable<?> entities) {
+        Set<String> first = null;
+        int index = 0;
+        for (Iterator<?> it = entities.iterator(); it.hasNext(); index++) {
+            Object entity = it.next();
+            if (elementMatcher != null) {
+                if (!elementMatcher.matches(entity)) {
+                    return new Mismatch(index, entity, null, null);
+                }
+                continue;
+            }
+            if (!(entity instanceof Entity)) {
+                return new Mismatch(index, entity, first, null);
+            }
+            Set<String> modified = ((Entity) entity).mymodifiedProperties();
+            if (first == null) {
+                first = modified;
+            } else if (!first.equals(modified)) {
+                return new Mismatch(index, entity, first, modified);
+            }
+        }
+        return null;
+    }
+
+    private static class Mismatch {
+        final int index;
+        final Object entity;
+        final Set<String> expected;
+        final Set<String> actual;
+
+        Mismatch(int index, Object entity, Set<String> expected, Set<String> actual) {
+            this.index = index;
+            this.entity = entity;
+            this.expected = expected;
+            this.actual = actual;
+        }
+    }
+
+    /**
+     * Creates a matcher that matches when every entity in the list matches {@code matcher}.
+     * @param matcher the matcher to apply to each entity
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> IsEntityList<E> everyEntity(Matcher<? super E> matcher) {
+        return new IsEntityList<E>(matcher);
+    }
+
+    /**
+     * Creates a matcher that matches when all entities in the list have the same modified properties.
+     * @param <E> the type of entity
+     */
+    public static <E extends Entity> IsEntityList<E> uniformModifiedProperties() {
+        return new IsEntityList<E>(null);
+    }
+}
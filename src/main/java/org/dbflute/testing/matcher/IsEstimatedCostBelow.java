@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+
+/**
+ * The matcher that evaluates the estimated rows scanned by the ConditionBean is below the budget.
+ * <p>
+ * The estimate is made by {@link CostModel}, and the mismatch description explains it.
+ * Example:
+ * <pre>{@code
+ * private static final CostModel STATS = CostModel.load(new File("src/test/resources/table-stats.properties"));
+ *
+ * verify(memberBhv).selectPage(argCB(MemberCB.class, estimatedCostBelow(STATS, 1000)));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsEstimatedCostBelow<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final CostModel model;
+    private final long budget;
+
+    public IsEstimatedCostBelow(CostModel model, long budget) {
+        this.model = model;
+        this.budget = budget;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        return item instanceof ConditionBean && model.estimate((ConditionBean) item).getRowsScanned() < budget;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("estimated rows scanned below " + budget);
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        description.appendText("estimated " + model.estimate((ConditionBean) item));
+    }
+
+    /**
+     * Creates a matcher that matches when the estimated rows scanned is below {@code budget}.
+     * @param model the cost model
+     * @param budget the budget of rows scanned
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsEstimatedCostBelow<T> estimatedCostBelow(CostModel model, long budget) {
+        return new IsEstimatedCostBelow<T>(model, budget);
+    }
+
+    /**
+     * Creates a matcher that matches when the rows scanned estimated by {@link CostModel#getDefault()}
+     * is below {@code budget}.
+     * @param budget the budget of rows scanned
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsEstimatedCostBelow<T> estimatedCostBelow(long budget) {
+        return new IsEstimatedCostBelow<T>(CostModel.getDefault(), budget);
+    }
+}
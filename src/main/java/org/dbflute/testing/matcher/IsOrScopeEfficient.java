@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+
+/**
+ * The matcher that evaluates or-scopes of the ConditionBean can use indexes.
+ * <p>
+ * It reports an or-scope
+ * <ul>
+ * <li>whose branch has like-search with a leading wildcard, or</li>
+ * <li>that mixes columns of different tables, or</li>
+ * <li>that mixes columns and has a branch whose columns lead no key, so the branch cannot use an index.
+ * Keys are the primary key and unique keys of DBMeta, and indexes of {@link CostModel}.</li>
+ * </ul>
+ * An or-scope of one column, such as {@code (A = 1 or A = 2)}, is fine.
+ * Functions, sub-queries and manual conditions in or-scope are not checked.
+ * <pre>{@code
+ * verify(memberBhv).selectList(argCB(MemberCB.class, efficientOrScopes()));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsOrScopeEfficient<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final CostModel model;
+
+    public IsOrScopeEfficient(CostModel model) {
+        this.model = model;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        return item instanceof ConditionBean && findProblems((ConditionBean) item).isEmpty();
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("or-scopes without leading wildcard and with an index for each branch");
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        description.appendValueList("", ", ", "", findProblems((ConditionBean) item));
+    }
+
+    private List<String> findProblems(ConditionBean cb) {
+        List<String> problems = new ArrayList<String>();
+        for (OrScopeQuery orScope : OrScopeQuery.listOf(cb)) {
+            Map<String, Set<ColumnInfo>> tables = new LinkedHashMap<String, Set<ColumnInfo>>();
+            for (List<OrScopeQuery.Predicate> branch : orScope.getBranches()) {
+                for (OrScopeQuery.Predicate predicate : branch) {
+                    if (predicate.isLeadingWildcard()) {
+                        problems.add(orScope + " has leading wildcard in " + predicate);
+                    }
+                    if (predicate.getColumn() == null) {
+                        continue;
+                    }
+                    Set<ColumnInfo> columns = tables.get(predicate.getPath());
+                    if (columns == null) {
+                        columns = new LinkedHashSet<ColumnInfo>();
+                        tables.put(predicate.getPath(), columns);
+                    }
+                    columns.add(predicate.getColumn());
+                }
+            }
+            if (tables.size() > 1) {
+                problems.add(orScope + " mixes tables " + paths(tables.keySet()));
+            } else if (tables.size() == 1 && tables.values().iterator().next().size() > 1) {
+                for (List<OrScopeQuery.Predicate> branch : orScope.getBranches()) {
+                    Set<ColumnInfo> columns = columnsOf(branch);
+                    if (!columns.isEmpty() && !leadsKey(columns)) {
+                        problems.add(orScope + " has branch of " + names(columns) + " which leads no index");
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static Set<ColumnInfo> columnsOf(List<OrScopeQuery.Predicate> branch) {
+        Set<ColumnInfo> columns = new LinkedHashSet<ColumnInfo>();
+        for (OrScopeQuery.Predicate predicate : branch) {
+            if (predicate.getColumn() != null) {
+                columns.add(predicate.getColumn());
+            }
+        }
+        return columns;
+    }
+
+    private boolean leadsKey(Set<ColumnInfo> columns) {
+        ColumnInfo first = columns.iterator().next();
+        for (List<ColumnInfo> key : model.getKeys(first.getDBMeta()).values()) {
+            if (!key.isEmpty() && columns.contains(key.get(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> paths(Set<String> paths) {
+        List<String> list = new ArrayList<String>(paths.size());
+        for (String path : paths) {
+            list.add(path.isEmpty() ? "(base)" : path.substring(0, path.length() - 1));
+        }
+        return list;
+    }
+
+    private static List<String> names(Set<ColumnInfo> columns) {
+        List<String> list = new ArrayList<String>(columns.size());
+        for (ColumnInfo column : columns) {
+            list.add(column.getColumnDbName());
+        }
+        return list;
+    }
+
+    /**
+     * Creates a matcher that fails when an or-scope has a leading wildcard or a branch that cannot use an index.
+     * Indexes of statistics are taken from {@link CostModel#getDefault()}.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsOrScopeEfficient<T> efficientOrScopes() {
+        return new IsOrScopeEfficient<T>(CostModel.getDefault());
+    }
+
+    /**
+     * Creates a matcher that fails when an or-scope has a leading wildcard or a branch that cannot use an index.
+     * @param model the cost model that has indexes of statistics
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsOrScopeEfficient<T> efficientOrScopes(CostModel model) {
+        return new IsOrScopeEfficient<T>(model);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.sqlclause.SqlClause;
+import org.dbflute.cbean.sqlclause.orderby.OrderByElement;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+
+/**
+ * The matcher that evaluates order-by of the ConditionBean.
+ * <p>
+ * Each expected element is {@code [relation.]column [asc|desc]}. The relation is a path of foreign property names
+ * and the column is either DB name or property name. The direction defaults to {@code asc}.
+ * Example:
+ * <pre>{@code
+ * MemberCB cb = ...;
+ * cb.query().addOrderBy_MemberId_Desc();
+ * cb.query().queryMemberStatus().addOrderBy_DisplayOrder_Asc();
+ *
+ * assertThat(cb, orderedBy("MEMBER_ID desc", "memberStatus.DISPLAY_ORDER"));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsOrderedBy<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final String[] expected;
+
+    public IsOrderedBy(String... expected) {
+        this.expected = expected;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        if (!(item instanceof ConditionBean)) {
+            return false;
+        }
+        ConditionBean cb = (ConditionBean) item;
+        return resolveExpected(cb.asDBMeta()).equals(OrderByColumn.toStrings(OrderByColumn.listOf(cb)));
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendValueList("ordered by ", ", ", "", expected);
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        List<String> actual = OrderByColumn.toStrings(OrderByColumn.listOf((ConditionBean) item));
+        if (actual.isEmpty()) {
+            description.appendText("no order-by");
+        } else {
+            description.appendValueList("was ordered by ", ", ", "", actual);
+        }
+    }
+
+    private List<String> resolveExpected(DBMeta baseMeta) {
+        List<String> list = new ArrayList<String>(expected.length);
+        for (String element : expected) {
+            String[] tokens = element.trim().split("\\s+");
+            if (tokens.length > 2 || (tokens.length == 2 && !tokens[1].matches("(?i)asc|desc"))) {
+                throw new IllegalArgumentException("Invalid order-by '" + element + "'. Expected '[relation.]column [asc|desc]'.");
+            }
+            boolean asc = tokens.length == 1 || tokens[1].equalsIgnoreCase("asc");
+            String[] names = tokens[0].split("\\.");
+            DBMeta meta = baseMeta;
+            StringBuilder path = new StringBuilder();
+            for (int i = 0; i < names.length - 1; i++) {
+                ForeignInfo foreign = MetaIndex.foreign(meta, names[i]);
+                path.append(foreign.getForeignPropertyName()).append('.');
+                meta = foreign.getForeignDBMeta();
+            }
+            ColumnInfo column = MetaIndex.column(meta, names[names.length - 1]);
+            list.add(OrderByColumn.toString(path.toString(), column.getColumnDbName(), asc));
+        }
+        return list;
+    }
+
+    /**
+     * Creates a matcher that matches when the ConditionBean is ordered by exactly {@code elements}.
+     * @param elements order-by elements like {@code "MEMBER_ID desc"} or {@code "memberStatus.DISPLAY_ORDER"}
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsOrderedBy<T> orderedBy(String... elements) {
+        return new IsOrderedBy<T>(elements);
+    }
+
+    /**
+     * A column in order-by of a ConditionBean.
+     */
+    static class OrderByColumn {
+        /** The relation path with trailing dot, empty for the base table. {@code null} if unknown alias. */
+        final String path;
+        final String alias;
+        /** The column, {@code null} for derived order-by. */
+        final ColumnInfo column;
+        final String columnName;
+        final boolean asc;
+
+        OrderByColumn(String path, String alias, ColumnInfo column, String columnName, boolean asc) {
+            this.path = path;
+            this.alias = alias;
+            this.column = column;
+            this.columnName = columnName;
+            this.asc = asc;
+        }
+
+        boolean isBaseTable() {
+            return "".equals(path);
+        }
+
+        @Override
+        public String toString() {
+            return toString(path == null ? alias + "." : path, column == null ? columnName : column.getColumnDbName(), asc);
+        }
+
+        static String toString(String path, String column, boolean asc) {
+            return path + column.toUpperCase(Locale.ENGLISH) + (asc ? " asc" : " desc");
+        }
+
+        static List<String> toStrings(List<OrderByColumn> columns) {
+            List<String> list = new ArrayList<String>(columns.size());
+            for (OrderByColumn column : columns) {
+                list.add(column.toString());
+            }
+            return list;
+        }
+
+        static List<OrderByColumn> listOf(ConditionBean cb) {
+            SqlClause sqlClause = cb.getSqlClause();
+            List<OrderByColumn> list = new ArrayList<OrderByColumn>();
+            if (!sqlClause.hasOrderByClause()) {
+                return list;
+            }
+            Map<String, String> aliasMap = MatcherHelper.getAliasPaths(cb.localCQ());
+            for (OrderByElement element : sqlClause.getOrderByComponent().getOrderByList()) {
+                String alias = element.getAliasName();
+                list.add(new OrderByColumn(aliasMap.get(alias), alias, element.getColumnInfo(), element.getColumnName(),
+                        element.isAsc()));
+            }
+            return list;
+        }
+    }
+}
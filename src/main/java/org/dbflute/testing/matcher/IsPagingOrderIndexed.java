@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.UniqueInfo;
+import org.dbflute.testing.matcher.IsOrderedBy.OrderByColumn;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+
+/**
+ * The matcher that evaluates a paging ConditionBean is ordered by columns that an index can serve.
+ * <p>
+ * It fails when the ConditionBean has paging and
+ * <ul>
+ * <li>has no order-by,</li>
+ * <li>orders by a relation column or derived column,</li>
+ * <li>mixes asc and desc, or</li>
+ * <li>orders by columns that are not a prefix of the primary key or a unique key (as listed in DBMeta).
+ * Columns after a whole key are allowed, because the order is already determined by the key.</li>
+ * </ul>
+ * A ConditionBean without paging always matches.
+ * <pre>{@code
+ * verify(memberBhv).selectPage(argCB(MemberCB.class, pagingOrderIsIndexed()));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsPagingOrderIndexed<T extends ConditionBean> extends TimedMatcher<T> {
+
+    @Override
+    protected boolean evaluate(Object item) {
+        return item instanceof ConditionBean && findProblem((ConditionBean) item) == null;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("paging ordered by a prefix of primary or unique key");
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        description.appendText(String.valueOf(findProblem((ConditionBean) item)));
+    }
+
+    private String findProblem(ConditionBean cb) {
+        if (!cb.getSqlClause().isFetchScopeEffective()) {
+            return null;
+        }
+        List<OrderByColumn> columns = OrderByColumn.listOf(cb);
+        if (columns.isEmpty()) {
+            return "paging without order-by";
+        }
+        List<ColumnInfo> ordered = new ArrayList<ColumnInfo>(columns.size());
+        for (OrderByColumn column : columns) {
+            if (!column.isBaseTable() || column.column == null) {
+                return "ordered by " + column + ", which is not a column of " + cb.asTableDbName();
+            }
+            if (column.asc != columns.get(0).asc) {
+                return "ordered by mixed directions " + OrderByColumn.toStrings(columns);
+            }
+            ordered.add(column.column);
+        }
+        for (UniqueInfo unique : getUniqueInfos(cb.asDBMeta())) {
+            if (isPrefix(ordered, unique.getUniqueColumnList())) {
+                return null;
+            }
+        }
+        return "ordered by " + OrderByColumn.toStrings(columns) + ", which is not a prefix of any key of " + cb.asTableDbName();
+    }
+
+    private List<UniqueInfo> getUniqueInfos(DBMeta meta) {
+        List<UniqueInfo> list = new ArrayList<UniqueInfo>();
+        if (meta.hasPrimaryKey()) {
+            list.add(meta.getPrimaryInfo().getUniqueInfo());
+        }
+        list.addAll(meta.getUniqueInfoList());
+        return list;
+    }
+
+    private boolean isPrefix(List<ColumnInfo> ordered, List<ColumnInfo> key) {
+        int length = Math.min(ordered.size(), key.size());
+        for (int i = 0; i < length; i++) {
+            if (!ordered.get(i).getColumnDbName().equals(key.get(i).getColumnDbName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a matcher that fails when a paging ConditionBean is not ordered by a prefix of primary or unique key.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsPagingOrderIndexed<T> pagingOrderIsIndexed() {
+        return new IsPagingOrderIndexed<T>();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+
+/**
+ * Matches when the value of IN (or NOT IN) condition contains the expected values.
+ * This matcher is used with {@link IsColumnExpressed} to evaluate a scope condition.
+ * <p>
+ * Unlike {@link org.hamcrest.core.IsCollectionContaining}, values are looked up
+ * in a hash set, so that it can evaluate a scope with thousands of values in linear time.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * cb.query().setMemberId_InScope(memberIdList);
+ * assertThat(cb, hasCondition("memberId", inExactly(memberIdList)));
+ * }</pre>
+ *
+ * @author taktos
+ *
+ */
+public class IsScopeContaining extends BaseMatcher<Collection<?>> {
+
+    private static final int MISMATCH_LIMIT = 10;
+
+    private final Collection<?> expected;
+    private final ValueSet expectedSet;
+    private final boolean exactly;
+
+    /**
+     * Creates a new matcher.
+     * @param expected the expected values
+     * @param exactly {@code true} if the scope must not contain any other value
+     */
+    public IsScopeContaining(Collection<?> expected, boolean exactly) {
+        this.expected = expected;
+        this.expectedSet = ValueSet.of(expected);
+        this.exactly = exactly;
+    }
+
+    @Override
+    public boolean matches(Object item) {
+        if (!(item instanceof Collection)) {
+            return false;
+        }
+        Collection<?> actual = (Collection<?>) item;
+        if (exactly) {
+            for (Object value : actual) {
+                if (!expectedSet.contains(value)) {
+                    return false;
+                }
+            }
+        }
+        ValueSet actualSet = ValueSet.of(actual);
+        if (exactly && actualSet.size() != expectedSet.size()) {
+            return false;
+        }
+        for (Object value : expected) {
+            if (!actualSet.contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(exactly ? "exactly " : "containing all of ");
+        description.appendText(expectedSet.size() + " values");
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof Collection)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        Collection<?> actual = (Collection<?>) item;
+        ValueSet actualSet = ValueSet.of(actual);
+        List<Object> missing = new ArrayList<Object>();
+        int missingCount = 0;
+        for (Object value : expected) {
+            if (!actualSet.contains(value)) {
+                if (missing.size() < MISMATCH_LIMIT) {
+                    missing.add(value);
+                }
+                missingCount++;
+            }
+        }
+        description.appendText("had " + actualSet.size() + " values");
+        if (missingCount > 0) {
+            description.appendValueList(", missing " + missingCount + " [", ", ", suffix(missingCount), missing);
+        }
+        if (!exactly) {
+            return;
+        }
+        List<Object> unexpected = new ArrayList<Object>();
+        int unexpectedCount = 0;
+        for (Object value : actual) {
+            if (!expectedSet.contains(value)) {
+                if (unexpected.size() < MISMATCH_LIMIT) {
+                    unexpected.add(value);
+                }
+                unexpectedCount++;
+            }
+        }
+        if (unexpectedCount > 0) {
+            description.appendValueList(", unexpected " + unexpectedCount + " [", ", ", suffix(unexpectedCount), unexpected);
+        }
+    }
+
+    private String suffix(int count) {
+        return count > MISMATCH_LIMIT ? ", ...]" : "]";
+    }
+
+    /**
+     * Creates a matcher that matches when the scope has exactly the same values as {@code expected}, in any order.
+     * @param expected the expected values
+     */
+    public static IsScopeContaining exactly(Collection<?> expected) {
+        return new IsScopeContaining(expected, true);
+    }
+
+    /**
+     * Creates a matcher that matches when the scope contains all of {@code expected}, in any order.
+     * @param expected the expected values
+     */
+    public static IsScopeContaining containsAll(Collection<?> expected) {
+        return new IsScopeContaining(expected, false);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.hamcrest.Description;
+
+/**
+ * The matcher that detects sub-query conditions known to be slow.
+ *
+ * <ul>
+ * <li>{@code derivedPurchase().count(...).greaterThan(0)}, which counts all referrers to know whether one exists.
+ * {@code existsPurchase(...)} stops at the first referrer.
+ * ({@code count = 0} should be {@code notExistsPurchase(...)} likewise.)</li>
+ * <li>Correlated sub-queries without any condition inside, which are evaluated for every row of the outer query.</li>
+ * </ul>
+ * <p>
+ * Example:
+ * <pre>{@code
+ * verify(memberBhv).selectList(argCB(MemberCB.class, efficientSubQueries()));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsSubQueryEfficient<T extends ConditionBean> extends TimedMatcher<T> {
+
+    private final boolean allowUnfiltered;
+
+    private IsSubQueryEfficient(boolean allowUnfiltered) {
+        this.allowUnfiltered = allowUnfiltered;
+    }
+
+    @Override
+    protected boolean evaluate(Object item) {
+        return item instanceof ConditionBean && findProblems((ConditionBean) item).isEmpty();
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("sub-queries without count-for-existence");
+        if (!allowUnfiltered) {
+            description.appendText(" or unfiltered correlation");
+        }
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof ConditionBean)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        description.appendValueList("", ", ", "", findProblems((ConditionBean) item));
+    }
+
+    private List<String> findProblems(ConditionBean cb) {
+        List<String> problems = new ArrayList<String>();
+        for (SubQueryCondition condition : SubQueryCondition.listOf(cb)) {
+            String existence = judgeCountForExistence(condition);
+            if (existence != null) {
+                problems.add(condition + " should be " + existence);
+            } else if (!allowUnfiltered && condition.getKind().isCorrelated()
+                    && condition.getKind() != SubQueryKind.SPECIFY_DERIVED_REFERRER && !condition.hasInnerFilter()) {
+                problems.add(condition + " has no condition in sub-query");
+            }
+        }
+        return problems;
+    }
+
+    private String judgeCountForExistence(SubQueryCondition condition) {
+        if (condition.getKind() != SubQueryKind.QUERY_DERIVED_REFERRER || !"count".equals(condition.getFunction())
+                || !(condition.getValue() instanceof Number)) {
+            return null;
+        }
+        int value = new BigDecimal(condition.getValue().toString()).compareTo(BigDecimal.ZERO);
+        int one = new BigDecimal(condition.getValue().toString()).compareTo(BigDecimal.ONE);
+        String operand = condition.getOperand();
+        if ((">".equals(operand) && value == 0) || (">=".equals(operand) && one == 0) || ("<>".equals(operand) && value == 0)) {
+            return SubQueryKind.EXISTS_REFERRER.toString();
+        }
+        if (("=".equals(operand) && value == 0) || ("<".equals(operand) && one == 0) || ("<=".equals(operand) && value == 0)) {
+            return SubQueryKind.NOT_EXISTS_REFERRER.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Creates a matcher that fails on count-for-existence derived-referrers and unfiltered correlated sub-queries.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsSubQueryEfficient<T> efficientSubQueries() {
+        return new IsSubQueryEfficient<T>(false);
+    }
+
+    /**
+     * Creates a matcher that fails on count-for-existence derived-referrers only.
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsSubQueryEfficient<T> noCountForExistence() {
+        return new IsSubQueryEfficient<T>(true);
+    }
+}
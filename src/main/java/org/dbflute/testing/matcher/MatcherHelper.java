@@ -15,10 +15,18 @@
  */
 package org.dbflute.testing.matcher;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.dbflute.cbean.AbstractConditionQuery;
 import org.dbflute.cbean.ConditionQuery;
 import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.testing.metrics.MatcherMetrics;
 import org.dbflute.util.DfReflectionUtil;
 
 /**
@@ -27,8 +35,82 @@ import org.dbflute.util.DfReflectionUtil;
  *
  */
 final class MatcherHelper {
+    private static final ConcurrentMap<Class<?>, Method> DBMETA_METHOD_CACHE = new ConcurrentHashMap<Class<?>, Method>();
+    private static final Field RELATION_FIELD = getField("_queryRelationKeepingMap");
+
     static DBMeta getDBMeta(ConditionQuery cq) {
-        Method method = DfReflectionUtil.getAccessibleMethod(cq.getClass(), "xgetLocalDBMeta", null);
+        Method method = DBMETA_METHOD_CACHE.get(cq.getClass());
+        if (MatcherMetrics.ENABLED) {
+            if (method == null) {
+                MatcherMetrics.cacheMiss();
+            } else {
+                MatcherMetrics.cacheHit();
+            }
+        }
+        if (method == null) {
+            method = DfReflectionUtil.getAccessibleMethod(cq.getClass(), "xgetLocalDBMeta", null);
+            DBMETA_METHOD_CACHE.putIfAbsent(cq.getClass(), method);
+        }
         return (DBMeta) DfReflectionUtil.invokeForcedly(method, cq, null);
     }
+
+    /**
+     * Gets ConditionQueries of relations already used in {@code cq}, without creating new ones.
+     * @param cq the instance of ConditionQuery
+     * @return the map of foreign property name to ConditionQuery
+     */
+    static Map<String, ConditionQuery> getRelationQueries(ConditionQuery cq) {
+        if (!(cq instanceof AbstractConditionQuery)) {
+            return Collections.emptyMap();
+        }
+        Map<String, ConditionQuery> map = readField(RELATION_FIELD, cq);
+        return map == null ? Collections.<String, ConditionQuery> emptyMap() : map;
+    }
+
+    /**
+     * Gets relation paths of table aliases used in the SqlClause of {@code cq}.
+     * @param cq the instance of ConditionQuery
+     * @return the map of alias name to relation path with trailing dot, empty path for the base table
+     */
+    static Map<String, String> getAliasPaths(ConditionQuery cq) {
+        Map<String, String> aliasMap = new HashMap<String, String>();
+        aliasMap.put(cq.xgetSqlClause().getBasePointAliasName(), "");
+        collectAlias(cq, "", aliasMap);
+        return aliasMap;
+    }
+
+    private static void collectAlias(ConditionQuery cq, String path, Map<String, String> aliasMap) {
+        for (Map.Entry<String, ConditionQuery> entry : getRelationQueries(cq).entrySet()) {
+            String relationPath = path + entry.getKey() + ".";
+            aliasMap.put(entry.getValue().xgetAliasName(), relationPath);
+            collectAlias(entry.getValue(), relationPath, aliasMap);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T readField(Field field, Object target) {
+        if (field == null) {
+            throw new IllegalStateException("Not supported version of dbflute-runtime.");
+        }
+        try {
+            return (T) field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Not supported version of dbflute-runtime.", e);
+        }
+    }
+
+    /**
+     * Gets the accessible field of {@link AbstractConditionQuery}.
+     * @param name the name of field
+     * @return the field, or {@code null} if not found
+     */
+    static Field getField(String name) {
+        try {
+            Field field = AbstractConditionQuery.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
 }
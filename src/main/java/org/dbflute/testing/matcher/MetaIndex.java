@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+
+/**
+ * Name lookup of columns and foreign relations of a DBMeta, built once per DBMeta.
+ *
+ * <p>
+ * Unlike {@link DBMeta#findColumnInfo(String)} and {@link DBMeta#findForeignInfo(String)},
+ * lookups return {@code null} for unknown names instead of throwing.
+ * Names are compared like DBFlute's flexible map, ignoring case, underscores and quotes,
+ * so both DB names ({@code MEMBER_STATUS}) and property names ({@code memberStatus}) are accepted.
+ * A one-to-one relation ({@code memberSecurityAsOne}) can be looked up without its {@code AsOne} suffix.
+ *
+ * @author taktos
+ *
+ */
+final class MetaIndex {
+    private static final String AS_ONE = "asone";
+    private static final ConcurrentMap<DBMeta, MetaIndex> CACHE = new ConcurrentHashMap<DBMeta, MetaIndex>();
+
+    private final Map<String, ColumnInfo> columnMap = new HashMap<String, ColumnInfo>();
+    private final Map<String, ForeignInfo> foreignMap = new HashMap<String, ForeignInfo>();
+
+    private MetaIndex(DBMeta meta) {
+        for (ColumnInfo column : meta.getColumnInfoList()) {
+            columnMap.put(key(column.getColumnDbName()), column);
+            columnMap.put(key(column.getPropertyName()), column);
+        }
+        for (ForeignInfo foreign : meta.getForeignInfoList()) {
+            foreignMap.put(key(foreign.getForeignPropertyName()), foreign);
+            foreignMap.put(key(foreign.getConstraintName()), foreign);
+        }
+        // aliases must not hide a relation that really has the name
+        for (ForeignInfo foreign : meta.getForeignInfoList()) {
+            String name = key(foreign.getForeignPropertyName());
+            if (name.endsWith(AS_ONE)) {
+                String alias = name.substring(0, name.length() - AS_ONE.length());
+                if (!foreignMap.containsKey(alias)) {
+                    foreignMap.put(alias, foreign);
+                }
+            }
+        }
+    }
+
+    static MetaIndex of(DBMeta meta) {
+        MetaIndex index = CACHE.get(meta);
+        if (index == null) {
+            index = new MetaIndex(meta);
+            MetaIndex existing = CACHE.putIfAbsent(meta, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Finds the column by DB name or property name.
+     * @param name the name of column
+     * @return the column, or {@code null} if not found
+     */
+    ColumnInfo findColumn(String name) {
+        return name == null ? null : columnMap.get(key(name));
+    }
+
+    /**
+     * Finds the foreign relation by property name or constraint name.
+     * @param name the name of relation, {@code AsOne} suffix can be omitted
+     * @return the relation, or {@code null} if not found
+     */
+    ForeignInfo findForeign(String name) {
+        return name == null ? null : foreignMap.get(key(name));
+    }
+
+    /**
+     * Finds the column, or throws if not found.
+     * @param meta the DBMeta of the table
+     * @param name the name of column
+     * @return the column
+     * @throws IllegalArgumentException no column found
+     */
+    static ColumnInfo column(DBMeta meta, String name) {
+        ColumnInfo column = of(meta).findColumn(name);
+        if (column == null) {
+            throw new IllegalArgumentException("Column '" + name + "' does not exist in " + meta.getTableDbName() + ".");
+        }
+        return column;
+    }
+
+    /**
+     * Finds the foreign relation, or throws if not found.
+     * @param meta the DBMeta of the table
+     * @param name the name of relation
+     * @return the relation
+     * @throws IllegalArgumentException no relation found
+     */
+    static ForeignInfo foreign(DBMeta meta, String name) {
+        ForeignInfo foreign = of(meta).findForeign(name);
+        if (foreign == null) {
+            throw new IllegalArgumentException("Relation '" + name + "' does not exist in " + meta.getTableDbName() + ".");
+        }
+        return foreign;
+    }
+
+    private static String key(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '_' && c != '"' && c != '`' && c != '[' && c != ']') {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ENGLISH);
+    }
+}
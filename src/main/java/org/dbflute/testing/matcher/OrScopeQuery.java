@@ -0,0 +1,426 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.ConditionQuery;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.helper.beans.DfBeanDesc;
+import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.dbflute.util.DfReflectionUtil;
+
+/**
+ * An or-scope group found in the where clause of ConditionBean, set up by {@code cb.orScopeQuery()}.
+ *
+ * <p>
+ * DBFlute reflects or-scope into the where clause as one clause like {@code (A or (B and C))},
+ * so groups are parsed from the where clause of the ConditionBean and of its sub-queries.
+ * Each branch is a list of predicates joined by {@code and}. Predicates of a nested or-scope are added to the branch.
+ * Table aliases are mapped to relation paths, such as {@code memberStatus}.
+ *
+ * @author taktos
+ *
+ */
+public final class OrScopeQuery {
+
+    private static final Pattern PREDICATE_PATTERN = Pattern.compile(
+            "^(?:(\\w+)\\.)?(\\w+)\\s+(not\\s+in|in|not\\s+like|like|is\\s+not\\s+null|is\\s+null|<>|!=|>=|<=|=|>|<)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern PARAMETER_PATTERN = Pattern.compile("/\\*pmb\\.([\\w.]+)\\*/");
+
+    private final String path;
+    private final List<List<Predicate>> branches;
+
+    private OrScopeQuery(String path, List<List<Predicate>> branches) {
+        this.path = path;
+        this.branches = branches;
+    }
+
+    /**
+     * Finds all or-scope groups of {@code cb} and its sub-queries.
+     * @param cb the ConditionBean
+     * @return the list of or-scope groups in registered order
+     * @throws IllegalStateException the version of dbflute-runtime is not supported
+     */
+    public static List<OrScopeQuery> listOf(ConditionBean cb) {
+        List<OrScopeQuery> list = new ArrayList<OrScopeQuery>();
+        collect(cb, cb.localCQ(), "", list);
+        for (SubQueryCondition subQuery : SubQueryCondition.listOf(cb)) {
+            collect(cb, subQuery.getSubQuery(), subQuery.getRelationPath(), list);
+        }
+        return list;
+    }
+
+    private static void collect(ConditionBean cb, ConditionQuery cq, String path, List<OrScopeQuery> list) {
+        String where = cq.xgetSqlClause().getWhereClause();
+        if (where == null) {
+            return;
+        }
+        parse(where, new Scope(cb, MatcherHelper.getDBMeta(cq), MatcherHelper.getAliasPaths(cq), path), list);
+    }
+
+    /**
+     * Parses or-scope groups from {@code where} without DBMeta, so columns and values are not resolved.
+     * @param where the where clause
+     * @param aliasPaths the map of alias name to relation path with trailing dot
+     * @return the list of or-scope groups
+     */
+    static List<OrScopeQuery> parse(String where, Map<String, String> aliasPaths) {
+        List<OrScopeQuery> list = new ArrayList<OrScopeQuery>();
+        parse(where, new Scope(null, null, aliasPaths, ""), list);
+        return list;
+    }
+
+    private static void parse(String where, Scope scope, List<OrScopeQuery> list) {
+        where = where.trim();
+        if (where.regionMatches(true, 0, "where", 0, 5)) {
+            where = where.substring(5);
+        }
+        String path = scope.path;
+        for (String conjunct : split(where, "and")) {
+            List<String> disjuncts = split(unwrap(conjunct), "or");
+            if (disjuncts.size() < 2) {
+                continue;
+            }
+            List<List<Predicate>> branches = new ArrayList<List<Predicate>>(disjuncts.size());
+            for (String disjunct : disjuncts) {
+                List<Predicate> branch = new ArrayList<Predicate>();
+                parseBranch(disjunct, scope, branch);
+                branches.add(Collections.unmodifiableList(branch));
+            }
+            list.add(new OrScopeQuery(path, Collections.unmodifiableList(branches)));
+        }
+    }
+
+    private static void parseBranch(String text, Scope scope, List<Predicate> branch) {
+        for (String conjunct : split(unwrap(text), "and")) {
+            List<String> disjuncts = split(unwrap(conjunct), "or");
+            if (disjuncts.size() > 1) {
+                // nested or-scope in and-part
+                for (String disjunct : disjuncts) {
+                    parseBranch(disjunct, scope, branch);
+                }
+            } else {
+                branch.add(parsePredicate(unwrap(conjunct), scope));
+            }
+        }
+    }
+
+    private static Predicate parsePredicate(String text, Scope scope) {
+        Object value = null;
+        Matcher parameter = PARAMETER_PATTERN.matcher(text);
+        if (parameter.find()) {
+            value = resolve(scope.cb, parameter.group(1));
+        }
+        Matcher matcher = PREDICATE_PATTERN.matcher(text);
+        if (!matcher.find() || text.substring(matcher.end()).trim().toLowerCase(Locale.ENGLISH).startsWith("(select")) {
+            // function, sub-query or manual condition
+            return new Predicate(scope.path, null, null, null, value, text);
+        }
+        String aliasPath = matcher.group(1) == null ? "" : scope.aliasPaths.get(matcher.group(1));
+        String relationPath = aliasPath == null ? matcher.group(1) + "." : aliasPath;
+        DBMeta meta = aliasPath == null || scope.meta == null ? null : findMeta(scope.meta, aliasPath);
+        ColumnInfo column = meta == null ? null : MetaIndex.of(meta).findColumn(matcher.group(2));
+        String operator = matcher.group(3).toLowerCase(Locale.ENGLISH).replaceAll("\\s+", " ");
+        String predicatePath = scope.path.isEmpty() ? relationPath : scope.path + "." + relationPath;
+        return new Predicate(predicatePath, column, matcher.group(2), operator, value, text);
+    }
+
+    private static DBMeta findMeta(DBMeta meta, String aliasPath) {
+        DBMeta current = meta;
+        for (String name : aliasPath.split("\\.")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            ForeignInfo foreign = MetaIndex.of(current).findForeign(name);
+            if (foreign == null) {
+                return null;
+            }
+            current = foreign.getForeignDBMeta();
+        }
+        return current;
+    }
+
+    /**
+     * Resolves the parameter comment path from the ConditionBean, such as
+     * {@code conditionQuery.memberName.varying.likeSearch.likeSearch0}.
+     * @return the value, or {@code null} if not resolved
+     */
+    private static Object resolve(Object root, String path) {
+        Object current = root;
+        for (String name : path.split("\\.")) {
+            if (current == null) {
+                return null;
+            }
+            if (current instanceof Map) {
+                current = ((Map<?, ?>) current).get(name);
+                continue;
+            }
+            try {
+                DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(current.getClass());
+                if (beanDesc.hasPropertyDesc(name)) {
+                    current = beanDesc.getPropertyDesc(name).getValue(current);
+                } else {
+                    Method method = DfReflectionUtil.getAccessibleMethod(current.getClass(), name, null);
+                    if (method == null) {
+                        return null;
+                    }
+                    current = DfReflectionUtil.invokeForcedly(method, current, null);
+                }
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Splits {@code text} by {@code keyword} at the top level, ignoring parentheses, quotes and comments.
+     */
+    static List<String> split(String text, String keyword) {
+        List<String> list = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                int close = text.indexOf('\'', i + 1);
+                i = close < 0 ? length : close;
+            } else if (c == '/' && text.startsWith("/*", i)) {
+                int close = text.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isWhitespace(c) && isKeyword(text, i + 1, keyword)) {
+                list.add(text.substring(start, i).trim());
+                start = i + 1 + keyword.length();
+                i = start - 1;
+            }
+        }
+        String last = text.substring(Math.min(start, length)).trim();
+        if (!last.isEmpty()) {
+            list.add(last);
+        }
+        return list;
+    }
+
+    private static boolean isKeyword(String text, int index, String keyword) {
+        int end = index + keyword.length();
+        return end < text.length() && text.regionMatches(true, index, keyword, 0, keyword.length())
+                && Character.isWhitespace(text.charAt(end));
+    }
+
+    /**
+     * Removes parentheses enclosing whole {@code text}.
+     */
+    static String unwrap(String text) {
+        String current = text.trim();
+        while (current.startsWith("(") && findClose(current) == current.length() - 1) {
+            current = current.substring(1, current.length() - 1).trim();
+        }
+        return current;
+    }
+
+    private static int findClose(String text) {
+        int depth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                int close = text.indexOf('\'', i + 1);
+                i = close < 0 ? text.length() : close;
+            } else if (c == '/' && text.startsWith("/*", i)) {
+                int close = text.indexOf("*/", i + 2);
+                i = close < 0 ? text.length() : close + 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the relation path of the sub-query that has this or-scope.
+     * @return the path like {@code purchaseList}, empty for the base query
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the branches joined by {@code or}. Each branch is the list of predicates joined by {@code and}.
+     * @return the branches
+     */
+    public List<List<Predicate>> getBranches() {
+        return branches;
+    }
+
+    /**
+     * Returns the columns referred in this or-scope, like {@code memberStatus.MEMBER_STATUS_NAME}.
+     * @return the columns in appearance order, without duplicates
+     */
+    public List<String> getColumns() {
+        Set<String> set = new LinkedHashSet<String>();
+        for (List<Predicate> branch : branches) {
+            for (Predicate predicate : branch) {
+                if (predicate.getColumnName() != null) {
+                    set.add(predicate.getPath() + predicate.getColumnName());
+                }
+            }
+        }
+        return new ArrayList<String>(set);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(path.isEmpty() ? "(" : path + ": (");
+        for (int i = 0; i < branches.size(); i++) {
+            sb.append(i == 0 ? "" : " or ");
+            List<Predicate> branch = branches.get(i);
+            boolean parenthesized = branch.size() > 1 && branches.size() > 1;
+            sb.append(parenthesized ? "(" : "");
+            for (int j = 0; j < branch.size(); j++) {
+                sb.append(j == 0 ? "" : " and ").append(branch.get(j));
+            }
+            sb.append(parenthesized ? ")" : "");
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * A predicate in a branch of or-scope.
+     */
+    public static final class Predicate {
+        private final String path;
+        private final ColumnInfo column;
+        private final String columnName;
+        private final String operator;
+        private final Object value;
+        private final String clause;
+
+        Predicate(String path, ColumnInfo column, String columnName, String operator, Object value, String clause) {
+            this.path = path;
+            this.column = column;
+            this.columnName = column == null ? columnName : column.getColumnDbName();
+            this.operator = operator;
+            this.value = value;
+            this.clause = clause;
+        }
+
+        /**
+         * Returns the relation path of the table of column.
+         * @return the path with trailing dot like {@code memberStatus.}, empty for the base table
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the column of predicate.
+         * @return the column, or {@code null} if not resolved from DBMeta
+         */
+        public ColumnInfo getColumn() {
+            return column;
+        }
+
+        /**
+         * Returns the DB name of column.
+         * @return the name of column, or {@code null} for a function, sub-query or manual condition
+         */
+        public String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * Returns the operator in lower case, such as {@code =}, {@code in} or {@code like}.
+         * @return the operator, or {@code null} for a function, sub-query or manual condition
+         */
+        public String getOperator() {
+            return operator;
+        }
+
+        /**
+         * Returns the first bound value of the predicate. The value of like-search has wildcards.
+         * @return the value, or {@code null} if none or not resolved
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the clause of predicate with parameter comments.
+         * @return the clause
+         */
+        public String getClause() {
+            return clause;
+        }
+
+        /**
+         * Returns whether this is like-search whose value starts with a wildcard.
+         * @return {@code true} if leading wildcard
+         */
+        public boolean isLeadingWildcard() {
+            if (!"like".equals(operator) || !(value instanceof String)) {
+                return false;
+            }
+            String text = (String) value;
+            return text.startsWith("%") || text.startsWith("_");
+        }
+
+        @Override
+        public String toString() {
+            if (operator == null) {
+                return clause;
+            }
+            StringBuilder sb = new StringBuilder(path).append(columnName).append(' ').append(operator);
+            if (value != null) {
+                sb.append(' ').append(value instanceof String ? "'" + value + "'" : value);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class Scope {
+        final ConditionBean cb;
+        final DBMeta meta;
+        final Map<String, String> aliasPaths;
+        final String path;
+
+        Scope(ConditionBean cb, DBMeta meta, Map<String, String> aliasPaths, String path) {
+            this.cb = cb;
+            this.meta = meta;
+            this.aliasPaths = aliasPaths;
+            this.path = path;
+        }
+    }
+}
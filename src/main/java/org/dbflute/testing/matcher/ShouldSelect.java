@@ -24,11 +24,10 @@ import org.dbflute.cbean.ConditionBean;
 import org.dbflute.cbean.sqlclause.SqlClause;
 import org.dbflute.dbmeta.DBMeta;
 import org.dbflute.dbmeta.info.ForeignInfo;
-import org.dbflute.exception.DBMetaNotFoundException;
 import org.dbflute.helper.beans.DfBeanDesc;
 import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.dbflute.testing.metrics.TimedMatcher;
 import org.dbflute.util.DfReflectionUtil;
-import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 
 /**
@@ -37,7 +36,7 @@ import org.hamcrest.Description;
  * @author taktos
  *
  */
-public class ShouldSelect<T extends ConditionBean> extends BaseMatcher<T> {
+public class ShouldSelect<T extends ConditionBean> extends TimedMatcher<T> {
 
     private final String columnName;
 
@@ -46,7 +45,7 @@ public class ShouldSelect<T extends ConditionBean> extends BaseMatcher<T> {
     }
 
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         if (item == null || !(item instanceof ConditionBean)) {
             return false;
         }
@@ -76,20 +75,12 @@ public class ShouldSelect<T extends ConditionBean> extends BaseMatcher<T> {
     }
 
     private ForeignInfo findForeignInfo(DBMeta meta, String foreignTable) {
-        try {
-            return meta.findForeignInfo(foreignTable);
-        } catch (DBMetaNotFoundException e) {
-            try {
-                return meta.findForeignInfo(foreignTable + "AsOne");
-            } catch (DBMetaNotFoundException ne) {
-                throw new IllegalArgumentException("Table '" + foreignTable + "' does not exist");
-            }
-        }
+        return MetaIndex.foreign(meta, foreignTable);
     }
 
     private boolean assertLocalSpecify(ConditionBean cb, String columnName) {
         DBMeta meta = cb.asDBMeta();
-        return !cb.hasSpecifiedColumn() || cb.localSp().isSpecifiedColumn(meta.findDbName(columnName));
+        return !cb.hasSpecifiedColumn() || cb.localSp().isSpecifiedColumn(MetaIndex.column(meta, columnName).getColumnDbName());
     }
 
     @SuppressWarnings("unchecked")
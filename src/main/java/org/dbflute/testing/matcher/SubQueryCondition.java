@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbflute.cbean.AbstractConditionQuery;
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.ConditionQuery;
+
+/**
+ * A sub-query condition found in the ConditionQuery tree,
+ * such as {@code existsPurchase()}, {@code inScopeMemberStatus()} or {@code derivedPurchase()}.
+ *
+ * <p>
+ * Sub-queries are read from the keeping maps of {@link AbstractConditionQuery},
+ * which are filled by generated ConditionQuery with keys like {@code memberId_ExistsReferrer_PurchaseList}.
+ * Sub-queries under relations ({@code queryMemberStatus()}) and nested sub-queries are also found.
+ *
+ * @author taktos
+ *
+ */
+public final class SubQueryCondition {
+
+    private static final Field SUB_QUERY_FIELD = MatcherHelper.getField("_subQueryKeepingMap");
+    private static final Field PARAMETER_FIELD = MatcherHelper.getField("_subQueryParameterKeepingMap");
+    private static final Pattern FUNCTION_PATTERN = Pattern.compile("^\\(\\s*select\\s+(?:distinct\\s+)?(\\w+)\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+
+    private final String path;
+    private final SubQueryKind kind;
+    private final String column;
+    private final String relation;
+    private final ConditionQuery subQuery;
+    private final String function;
+    private final String operand;
+    private final Object value;
+
+    private SubQueryCondition(String path, SubQueryKind kind, String column, String relation, ConditionQuery subQuery,
+            String function, String operand, Object value) {
+        this.path = path;
+        this.kind = kind;
+        this.column = column;
+        this.relation = relation;
+        this.subQuery = subQuery;
+        this.function = function;
+        this.operand = operand;
+        this.value = value;
+    }
+
+    /**
+     * Finds all sub-query conditions of {@code cb}.
+     * @param cb the ConditionBean
+     * @return the list of sub-query conditions in registered order
+     * @throws IllegalStateException the version of dbflute-runtime is not supported
+     */
+    public static List<SubQueryCondition> listOf(ConditionBean cb) {
+        return listOf(cb.localCQ());
+    }
+
+    /**
+     * Finds all sub-query conditions of {@code cq} and its relations.
+     * @param cq the ConditionQuery
+     * @return the list of sub-query conditions in registered order
+     * @throws IllegalStateException the version of dbflute-runtime is not supported
+     */
+    public static List<SubQueryCondition> listOf(ConditionQuery cq) {
+        List<SubQueryCondition> list = new ArrayList<SubQueryCondition>();
+        collect(cq, "", list);
+        return list;
+    }
+
+    private static void collect(ConditionQuery cq, String path, List<SubQueryCondition> list) {
+        if (!(cq instanceof AbstractConditionQuery)) {
+            return;
+        }
+        Map<String, Map<String, ConditionQuery>> subQueryMap = MatcherHelper.readField(SUB_QUERY_FIELD, cq);
+        if (subQueryMap != null) {
+            Map<String, Map<String, Object>> parameterMap = MatcherHelper.readField(PARAMETER_FIELD, cq);
+            for (Map.Entry<String, Map<String, ConditionQuery>> entry : subQueryMap.entrySet()) {
+                String key = entry.getKey();
+                Map<String, Object> parameters = parameterMap == null ? null : parameterMap.get(key);
+                int number = 0;
+                for (ConditionQuery subQuery : entry.getValue().values()) {
+                    number++;
+                    SubQueryCondition condition = create(cq, path, key, subQuery, parameters, number);
+                    list.add(condition);
+                    collect(subQuery, condition.getRelationPath(), list);
+                }
+            }
+        }
+        for (Map.Entry<String, ConditionQuery> entry : MatcherHelper.getRelationQueries(cq).entrySet()) {
+            collect(entry.getValue(), join(path, entry.getKey()), list);
+        }
+    }
+
+    private static SubQueryCondition create(ConditionQuery cq, String path, String key, ConditionQuery subQuery,
+            Map<String, Object> parameters, int number) {
+        // key: memberId_ExistsReferrer_PurchaseList
+        String[] tokens = key.split("_");
+        String column = tokens[0];
+        SubQueryKind kind = tokens.length > 1 ? SubQueryKind.of(tokens[1]) : SubQueryKind.OTHER;
+        String relation = tokens.length > 2 ? uncapitalize(tokens[tokens.length - 1]) : null;
+        String function = null;
+        String operand = null;
+        Object value = null;
+        String parameterKey = "subQueryParameterKey" + number;
+        if (parameters != null && parameters.containsKey(parameterKey)) {
+            value = parameters.get(parameterKey);
+            String where = cq.xgetSqlClause().getWhereClause();
+            int index = where == null ? -1 : where.indexOf(key + "Parameter." + parameterKey);
+            if (index >= 0) {
+                int comment = where.lastIndexOf("/*pmb.", index);
+                int close = where.lastIndexOf(')', comment);
+                if (comment >= 0 && close >= 0) {
+                    operand = where.substring(close + 1, comment).trim();
+                    function = findFunction(where, close);
+                }
+            }
+        }
+        return new SubQueryCondition(path, kind, column, relation, subQuery, function, operand, value);
+    }
+
+    private static String findFunction(String where, int close) {
+        int depth = 0;
+        for (int i = close; i >= 0; i--) {
+            char c = where.charAt(i);
+            if (c == ')') {
+                depth++;
+            } else if (c == '(' && --depth == 0) {
+                Matcher matcher = FUNCTION_PATTERN.matcher(where.substring(i, close));
+                return matcher.find() ? matcher.group(1).toLowerCase() : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the relation path from the base table to the ConditionQuery that has this sub-query.
+     * @return the path like {@code memberStatus}, empty for the base table
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public SubQueryKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the property name of the column of the outer query.
+     * @return the name of column
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the name of the referrer or relation of the sub-query, such as {@code purchaseList}.
+     * @return the name of relation, or {@code null} if unknown
+     */
+    public String getRelation() {
+        return relation;
+    }
+
+    public ConditionQuery getSubQuery() {
+        return subQuery;
+    }
+
+    /**
+     * Returns the function of derived-referrer, such as {@code count}.
+     * @return the function in lower case, or {@code null} if not derived-referrer condition
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the operand of derived-referrer, such as {@code >}.
+     * @return the operand, or {@code null} if not derived-referrer condition
+     */
+    public String getOperand() {
+        return operand;
+    }
+
+    /**
+     * Returns the value compared with the result of derived-referrer.
+     * @return the value, or {@code null} if not derived-referrer condition
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Returns whether the sub-query has its own conditions.
+     * @return {@code true} if any condition is set in the sub-query
+     */
+    public boolean hasInnerFilter() {
+        return subQuery.xgetSqlClause().hasWhereClauseOnBaseQuery();
+    }
+
+    /**
+     * Returns whether the sub-query is related to {@code name}.
+     * The name is compared case-insensitively, and {@code List} suffix of referrer can be omitted.
+     * @param name the name of relation
+     * @return {@code true} if related
+     */
+    public boolean isRelatedTo(String name) {
+        if (relation == null) {
+            return false;
+        }
+        return relation.equalsIgnoreCase(name) || relation.equalsIgnoreCase(name + "List");
+    }
+
+    String getRelationPath() {
+        return join(path, relation == null ? column : relation);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(path.isEmpty() ? "" : path + ".").append(column).append(' ').append(kind);
+        sb.append('(').append(relation == null ? "?" : relation).append(')');
+        if (function != null) {
+            sb.append(' ').append(function).append(' ').append(operand).append(' ').append(value);
+        }
+        return sb.toString();
+    }
+
+    private static String join(String path, String name) {
+        return path.isEmpty() ? name : path + "." + name;
+    }
+
+    private static String uncapitalize(String name) {
+        return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
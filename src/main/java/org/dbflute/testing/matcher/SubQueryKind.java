@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+/**
+ * Kinds of sub-query conditions of ConditionQuery.
+ *
+ * @author taktos
+ *
+ */
+public enum SubQueryKind {
+    EXISTS_REFERRER("ExistsReferrer", true),
+    NOT_EXISTS_REFERRER("NotExistsReferrer", true),
+    IN_SCOPE_RELATION("InScopeRelation", false),
+    NOT_IN_SCOPE_RELATION("NotInScopeRelation", false),
+    QUERY_DERIVED_REFERRER("QueryDerivedReferrer", true),
+    SPECIFY_DERIVED_REFERRER("SpecifyDerivedReferrer", true),
+    OTHER("", false);
+
+    private final String keyword;
+    private final boolean correlated;
+
+    private SubQueryKind(String keyword, boolean correlated) {
+        this.keyword = keyword;
+        this.correlated = correlated;
+    }
+
+    /**
+     * Returns whether the sub-query refers to the column of the outer query.
+     * @return {@code true} if correlated
+     */
+    public boolean isCorrelated() {
+        return correlated;
+    }
+
+    /**
+     * Returns the kind for the keyword used in the keys of generated ConditionQuery, such as {@code ExistsReferrer}.
+     * @param keyword the keyword
+     * @return the kind, {@link #OTHER} if unknown
+     */
+    static SubQueryKind of(String keyword) {
+        for (SubQueryKind kind : values()) {
+            if (kind != OTHER && kind.keyword.equals(keyword)) {
+                return kind;
+            }
+        }
+        return OTHER;
+    }
+}
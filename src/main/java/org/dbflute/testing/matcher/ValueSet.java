@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Read-only hash set of condition values.
+ * <p>
+ * When all values are integral numbers ({@code Long}, {@code Integer}, {@code Short}, {@code Byte}),
+ * values are kept in a primitive {@code long} table without boxing.
+ * Integral values are compared by their numeric value in that case,
+ * so {@code 1} and {@code 1L} are treated as the same value.
+ *
+ * @author taktos
+ *
+ */
+abstract class ValueSet {
+
+    /**
+     * Creates a new set that contains distinct values of {@code values}.
+     * @param values the values to add
+     * @return the set
+     */
+    static ValueSet of(Collection<?> values) {
+        for (Object value : values) {
+            if (!isIntegral(value)) {
+                return new ObjectValueSet(values);
+            }
+        }
+        return new LongValueSet(values);
+    }
+
+    abstract boolean contains(Object value);
+
+    abstract int size();
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static class ObjectValueSet extends ValueSet {
+        private final Set<Object> set;
+
+        ObjectValueSet(Collection<?> values) {
+            this.set = new HashSet<Object>(values);
+        }
+
+        @Override
+        boolean contains(Object value) {
+            return set.contains(value);
+        }
+
+        @Override
+        int size() {
+            return set.size();
+        }
+    }
+
+    /**
+     * Open addressing hash set of {@code long}, using linear probing.
+     */
+    private static class LongValueSet extends ValueSet {
+        private final long[] table;
+        private final boolean[] used;
+        private final int mask;
+        private int size;
+
+        LongValueSet(Collection<?> values) {
+            int capacity = 16;
+            while (capacity < values.size() * 2) {
+                capacity <<= 1;
+            }
+            this.table = new long[capacity];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+            for (Object value : values) {
+                add(((Number) value).longValue());
+            }
+        }
+
+        private void add(long value) {
+            int i = index(value);
+            while (used[i]) {
+                if (table[i] == value) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            table[i] = value;
+            size++;
+        }
+
+        @Override
+        boolean contains(Object value) {
+            if (!isIntegral(value)) {
+                return false;
+            }
+            long v = ((Number) value).longValue();
+            int i = index(v);
+            while (used[i]) {
+                if (table[i] == v) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        private int index(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
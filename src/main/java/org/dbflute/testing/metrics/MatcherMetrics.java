@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluation metrics of matchers.
+ *
+ * <p>
+ * Enabled by system property {@value #ENABLED_PROPERTY}{@code =true}. When enabled, matchers record
+ * invocation count and cumulative time per matcher class, hits and misses of reflection caches,
+ * and the number of ConditionBeans created to replay lambda arguments, and the report is written as JSON
+ * to {@value #DEFAULT_FILE} (or {@value #FILE_PROPERTY}) at JVM shutdown.
+ * Use {@link org.dbflute.testing.rule.MatcherMetricsReport} to write the metrics of each test class.
+ * Matchers are timed by extending {@link TimedMatcher},
+ * and replays of lambda arguments are counted by {@link org.dbflute.testing.mock.ConditionBeanFactory#replay}.
+ *
+ * <p>
+ * {@link #ENABLED} is a constant, and all instrumentation is guarded by it,
+ * so the JIT compiler removes the instrumentation when disabled.
+ * Counters are {@link LongAdder}, which are striped to avoid contention between threads.
+ *
+ * @author taktos
+ *
+ */
+public final class MatcherMetrics {
+
+    /** System property to enable metrics. */
+    public static final String ENABLED_PROPERTY = "dbflute.testing.metrics";
+    /** System property of the report file written at JVM shutdown. */
+    public static final String FILE_PROPERTY = "dbflute.testing.metrics.file";
+    /** Default report file. */
+    public static final String DEFAULT_FILE = "target/dbflute-matcher-metrics.json";
+
+    /** Whether metrics are recorded. */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<String, Timer>();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final LongAdder MATERIALIZATIONS = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread("dbflute-matcher-metrics") {
+                @Override
+                public void run() {
+                    snapshot().write(new File(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)));
+                }
+            });
+        }
+    }
+
+    private MatcherMetrics() {
+    }
+
+    private static class Timer {
+        final LongAdder invocations = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    /**
+     * Records an evaluation of {@code matcherType} that started at {@code startNanos}.
+     * @param matcherType the class of matcher
+     * @param startNanos the value of {@link System#nanoTime()} when the evaluation started
+     */
+    public static void record(Class<?> matcherType, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Timer timer = TIMERS.get(matcherType.getName());
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = TIMERS.putIfAbsent(matcherType.getName(), created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        timer.invocations.increment();
+        timer.nanos.add(elapsed);
+    }
+
+    /**
+     * Records a hit of reflection cache.
+     */
+    public static void cacheHit() {
+        CACHE_HITS.increment();
+    }
+
+    /**
+     * Records a miss of reflection cache.
+     */
+    public static void cacheMiss() {
+        CACHE_MISSES.increment();
+    }
+
+    /**
+     * Records a ConditionBean created to apply a lambda argument.
+     */
+    public static void materialized() {
+        MATERIALIZATIONS.increment();
+    }
+
+    /**
+     * Returns the current values of all metrics.
+     * @return the snapshot
+     */
+    public static Snapshot snapshot() {
+        Map<String, long[]> timers = new TreeMap<String, long[]>();
+        for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+            Timer timer = entry.getValue();
+            timers.put(entry.getKey(), new long[] { timer.invocations.sum(), timer.nanos.sum() });
+        }
+        return new Snapshot(timers, CACHE_HITS.sum(), CACHE_MISSES.sum(), MATERIALIZATIONS.sum());
+    }
+
+    /**
+     * Values of metrics at a point of time.
+     */
+    public static class Snapshot {
+        private final Map<String, long[]> timers;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long materializations;
+
+        Snapshot(Map<String, long[]> timers, long cacheHits, long cacheMisses, long materializations) {
+            this.timers = Collections.unmodifiableMap(timers);
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.materializations = materializations;
+        }
+
+        /**
+         * Returns the metrics recorded since {@code base}.
+         * @param base the earlier snapshot
+         * @return the difference
+         */
+        public Snapshot since(Snapshot base) {
+            Map<String, long[]> diff = new TreeMap<String, long[]>();
+            for (Map.Entry<String, long[]> entry : timers.entrySet()) {
+                long[] before = base.timers.get(entry.getKey());
+                long[] now = entry.getValue();
+                long invocations = now[0] - (before == null ? 0 : before[0]);
+                if (invocations > 0) {
+                    diff.put(entry.getKey(), new long[] { invocations, now[1] - (before == null ? 0 : before[1]) });
+                }
+            }
+            return new Snapshot(diff, cacheHits - base.cacheHits, cacheMisses - base.cacheMisses,
+                    materializations - base.materializations);
+        }
+
+        public long getInvocations(Class<?> matcherType) {
+            long[] values = timers.get(matcherType.getName());
+            return values == null ? 0 : values[0];
+        }
+
+        public long getNanos(Class<?> matcherType) {
+            long[] values = timers.get(matcherType.getName());
+            return values == null ? 0 : values[1];
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        public long getMaterializations() {
+            return materializations;
+        }
+
+        /**
+         * Returns the metrics as JSON.
+         * @return the JSON string
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\n  \"matchers\": {");
+            String delimiter = "\n";
+            for (Map.Entry<String, long[]> entry : timers.entrySet()) {
+                sb.append(delimiter).append("    \"").append(entry.getKey()).append("\": {\"invocations\": ")
+                        .append(entry.getValue()[0]).append(", \"nanos\": ").append(entry.getValue()[1]).append('}');
+                delimiter = ",\n";
+            }
+            sb.append(timers.isEmpty() ? "},\n" : "\n  },\n");
+            sb.append("  \"reflectionCacheHits\": ").append(cacheHits).append(",\n");
+            sb.append("  \"reflectionCacheMisses\": ").append(cacheMisses).append(",\n");
+            sb.append("  \"materializations\": ").append(materializations).append("\n}\n");
+            return sb.toString();
+        }
+
+        /**
+         * Writes the metrics as JSON to {@code file}, creating parent directories.
+         * @param file the file to write
+         * @throws IllegalStateException failed to write
+         */
+        public void write(File file) {
+            try {
+                File dir = file.getAbsoluteFile().getParentFile();
+                Files.createDirectories(dir.toPath());
+                OutputStream out = Files.newOutputStream(file.toPath());
+                try {
+                    out.write(toJson().getBytes(UTF8));
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write matcher metrics: " + file, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
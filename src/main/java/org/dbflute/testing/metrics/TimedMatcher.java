@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.metrics;
+
+import org.hamcrest.BaseMatcher;
+
+/**
+ * Base class of matchers whose evaluation is recorded in {@link MatcherMetrics}.
+ *
+ * <p>
+ * Subclasses implement {@link #evaluate(Object)} instead of {@link #matches(Object)}.
+ * The time of each evaluation is recorded per matcher class when {@link MatcherMetrics#ENABLED}.
+ *
+ * @param <T> the type of matched object
+ * @author taktos
+ *
+ */
+public abstract class TimedMatcher<T> extends BaseMatcher<T> {
+
+    @Override
+    public boolean matches(Object item) {
+        if (MatcherMetrics.ENABLED) {
+            long start = System.nanoTime();
+            try {
+                return evaluate(item);
+            } finally {
+                MatcherMetrics.record(getClass(), start);
+            }
+        }
+        return evaluate(item);
+    }
+
+    /**
+     * Evaluates whether {@code item} matches.
+     * @param item the object to match
+     * @return {@code true} if {@code item} matches
+     */
+    protected abstract boolean evaluate(Object item);
+}
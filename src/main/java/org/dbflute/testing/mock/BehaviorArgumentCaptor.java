@@ -20,7 +20,6 @@ import java.util.List;
 
 import org.dbflute.bhv.readable.CBCall;
 import org.dbflute.cbean.ConditionBean;
-import org.dbflute.util.DfReflectionUtil;
 import org.mockito.ArgumentCaptor;
 
 /**
@@ -40,6 +39,11 @@ import org.mockito.ArgumentCaptor;
  * assertThat(cb, hasCondition("memberId", equal(1)));
  * </code></pre>
  *
+ * <p>
+ * Note that the mock keeps every invocation with its lambda argument for verification.
+ * For long-running tests with millions of calls, consider {@link BehaviorRecorder} with a {@link CapturePolicy},
+ * which bounds the memory at the time of call.
+ *
  * @param <CB> Type of ConditionBean implementation
  * @author taktos
  *
@@ -48,7 +52,7 @@ import org.mockito.ArgumentCaptor;
 public class BehaviorArgumentCaptor<CB extends ConditionBean> {
 
     private final ArgumentCaptor<CBCall> captor;
-    private final Class<CB> clazz;
+    private final ConditionBeanFactory<CB> factory;
 
     /**
      * Creates a new {@link BehaviorArgumentCaptor} of {@code clazz}.
@@ -56,8 +60,17 @@ public class BehaviorArgumentCaptor<CB extends ConditionBean> {
      * @param clazz Implementation class of ConditionBean
      */
     public BehaviorArgumentCaptor(Class<CB> clazz) {
+        this(ConditionBeanFactory.of(clazz));
+    }
+
+    /**
+     * Creates a new {@link BehaviorArgumentCaptor} that creates ConditionBean by {@code factory}.
+     *
+     * @param factory the factory of ConditionBean implementation
+     */
+    public BehaviorArgumentCaptor(ConditionBeanFactory<CB> factory) {
         this.captor = ArgumentCaptor.forClass(CBCall.class);
-        this.clazz = clazz;
+        this.factory = factory;
     }
 
     /**
@@ -80,11 +93,9 @@ public class BehaviorArgumentCaptor<CB extends ConditionBean> {
      * @see #getAllCB()
      * @see ArgumentCaptor#getValue()
      */
+    @SuppressWarnings("unchecked")
     public CB getCB() {
-        CB cb = (CB) DfReflectionUtil.newInstance(clazz);
-        CBCall call = captor.getValue();
-        call.callback(cb);
-        return cb;
+        return factory.replay((CBCall<CB>) captor.getValue());
     }
 
     /**
@@ -93,17 +104,36 @@ public class BehaviorArgumentCaptor<CB extends ConditionBean> {
      * @return new {@code CB} instances.
      * @see ArgumentCaptor#getAllValues()
      */
+    @SuppressWarnings("unchecked")
     public List<CB> getAllCB() {
         List<CBCall> values = captor.getAllValues();
         List<CB> cbs = new ArrayList<CB>(values.size());
         for (CBCall callback : values) {
-            CB cb = (CB) DfReflectionUtil.newInstance(clazz);
-            callback.callback(cb);
-            cbs.add(cb);
+            cbs.add(factory.replay((CBCall<CB>) callback));
         }
         return cbs;
     }
 
+    /**
+     * Returns all captured lambda arguments in invocation order.
+     *
+     * @return captured lambda arguments
+     * @see ArgumentCaptor#getAllValues()
+     */
+    public List<CBCall<CB>> getAllCalls() {
+        List values = captor.getAllValues();
+        return new ArrayList<CBCall<CB>>(values);
+    }
+
+    /**
+     * Returns the factory to create ConditionBean for lambda arguments.
+     *
+     * @return the factory
+     */
+    public ConditionBeanFactory<CB> getFactory() {
+        return factory;
+    }
+
     /**
      * Create a new {@link BehaviorArgumentCaptor} of {@code clazz}.
      * @param clazz Class of ConditionBean implementation.
@@ -113,4 +143,13 @@ public class BehaviorArgumentCaptor<CB extends ConditionBean> {
         return new BehaviorArgumentCaptor<CB>(clazz);
     }
 
+    /**
+     * Create a new {@link BehaviorArgumentCaptor} that creates ConditionBean by {@code factory}.
+     * @param factory the factory of ConditionBean implementation.
+     * @return new captor
+     */
+    public static <CB extends ConditionBean> BehaviorArgumentCaptor<CB> of(ConditionBeanFactory<CB> factory) {
+        return new BehaviorArgumentCaptor<CB>(factory);
+    }
+
 }
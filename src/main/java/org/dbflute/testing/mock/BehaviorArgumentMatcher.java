@@ -18,8 +18,8 @@ package org.dbflute.testing.mock;
 import org.dbflute.bhv.readable.CBCall;
 import org.dbflute.cbean.ConditionBean;
 import org.dbflute.testing.DBFluteMatchers;
-import org.dbflute.util.DfReflectionUtil;
-import org.hamcrest.BaseMatcher;
+import org.dbflute.testing.metrics.TimedMatcher;
+import org.dbflute.testing.replay.CBStructure;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.mockito.ArgumentMatcher;
@@ -50,47 +50,63 @@ import org.mockito.ArgumentMatcher;
 
  * <h3>Details</h3>
  * Because it requires a instance of ConditionBean to evaluates Behavior's
- * lambda parameter, this matcher creates it by reflection.
+ * lambda parameter, this matcher creates it by {@link ConditionBeanFactory}.
  * Once created a ConditionBean instance, this matcher pass it to lambda to capture,
  * and then pass it to subsequent matcher.
+ * This matcher does not keep the instance, so it can be used from multiple threads
+ * as long as the subsequent matcher can.
+ * If the factory is a {@link ConditionBeanPool}, the instance is released to the pool
+ * as soon as the evaluation completes.
  *
  * @param <T> the type of ConditionBean implementaion
  * @author taktos
  * @see DBFluteMatchers#argCB(Class, Matcher)
  */
-public class BehaviorArgumentMatcher<T extends ConditionBean> extends BaseMatcher<CBCall<T>> {
+public class BehaviorArgumentMatcher<T extends ConditionBean> extends TimedMatcher<CBCall<T>> {
 
-    private final Class<T> clazz;
+    private final ConditionBeanFactory<T> factory;
     private final Matcher<T> matcher;
 
-    private T cb;
-
     /**
      * Creates a new instance that evaluates <code>cbclass</code> argument with <code>matcher</code>.
      * @param cbclass Class instance of ConditionBean implementation
      * @param matcher Matcher to evaluate ConditionBean conditions
      */
     public BehaviorArgumentMatcher(Class<T> cbclass, Matcher<T> matcher) {
-        this.clazz = cbclass;
+        this(ConditionBeanFactory.of(cbclass), matcher);
+    }
+
+    /**
+     * Creates a new instance that evaluates ConditionBean created by <code>factory</code> with <code>matcher</code>.
+     * @param factory the factory of ConditionBean implementation
+     * @param matcher Matcher to evaluate ConditionBean conditions
+     */
+    public BehaviorArgumentMatcher(ConditionBeanFactory<T> factory, Matcher<T> matcher) {
+        this.factory = factory;
         this.matcher = matcher;
     }
 
     /**
-     * Creates a new {@code T} instance by reflection and pass it to subsequent matcher.
+     * Creates a new {@code T} instance by factory and pass it to subsequent matcher.
+     * If {@code item} is a ConditionBean or the structure of a materialized call ({@link CBStructure}),
+     * it is passed to subsequent matcher as it is.
      */
     @SuppressWarnings("unchecked")
     @Override
-    public boolean matches(Object item) {
+    protected boolean evaluate(Object item) {
         if (item == null) {
             return false;
         }
-        T cb = (T) DfReflectionUtil.newInstance(clazz);
-        CBCall<T> callback = (CBCall<T>) item;
-        callback.callback(cb);
-        // store cb for mismatch
-        this.cb = cb;
-
-        return matcher.matches(cb);
+        if (item instanceof ConditionBean || item instanceof CBStructure) {
+            // already materialized, e.g. by CapturePolicy
+            return matcher.matches(item);
+        }
+        T cb = factory.replay((CBCall<T>) item);
+        try {
+            return matcher.matches(cb);
+        } finally {
+            factory.release(cb);
+        }
     }
 
     /**
@@ -102,11 +118,21 @@ public class BehaviorArgumentMatcher<T extends ConditionBean> extends BaseMatche
     }
 
     /**
-     * {@inheritDoc}
+     * Replays the callback on a new {@code T} instance and describes mismatch of it.
      */
+    @SuppressWarnings("unchecked")
     @Override
     public void describeMismatch(Object item, Description description) {
-        matcher.describeMismatch(cb, description);
+        if (item == null || item instanceof ConditionBean || item instanceof CBStructure) {
+            matcher.describeMismatch(item, description);
+            return;
+        }
+        T cb = factory.replay((CBCall<T>) item);
+        try {
+            matcher.describeMismatch(cb, description);
+        } finally {
+            factory.release(cb);
+        }
     }
 
-}
+}
\ No newline at end of file
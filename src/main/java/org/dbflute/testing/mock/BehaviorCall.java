@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.lang.reflect.Method;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.testing.replay.CBStructure;
+
+/**
+ * A Behavior method call recorded by {@link BehaviorRecorder}.
+ *
+ * @author taktos
+ *
+ */
+public class BehaviorCall {
+
+    private final Class<?> behaviorType;
+    private final Method method;
+    private final Object[] arguments;
+    private final String threadName;
+    private final long threadId;
+    private final long sequence;
+    private final CBStructure structure;
+    private final Long fingerprint;
+
+    /**
+     * Creates a new call.
+     * @param method the called method
+     * @param arguments the arguments of the call
+     * @param thread the thread which called the method
+     * @param sequence the sequence number of the call in the recorder
+     */
+    public BehaviorCall(Method method, Object[] arguments, Thread thread, long sequence) {
+        this(method.getDeclaringClass(), method, arguments, thread, sequence);
+    }
+
+    /**
+     * Creates a new call.
+     * @param behaviorType the class of Behavior (or its mock) whose method was called
+     * @param method the called method
+     * @param arguments the arguments of the call
+     * @param thread the thread which called the method
+     * @param sequence the sequence number of the call in the recorder
+     */
+    public BehaviorCall(Class<?> behaviorType, Method method, Object[] arguments, Thread thread, long sequence) {
+        this(behaviorType, method, arguments == null ? new Object[0] : arguments, thread.getName(), thread.getId(), sequence,
+                null, null);
+    }
+
+    private BehaviorCall(Class<?> behaviorType, Method method, Object[] arguments, String threadName, long threadId,
+            long sequence, CBStructure structure, Long fingerprint) {
+        this.behaviorType = behaviorType;
+        this.method = method;
+        this.arguments = arguments;
+        this.threadName = threadName;
+        this.threadId = threadId;
+        this.sequence = sequence;
+        this.structure = structure;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns a copy of this call whose lambda argument is replaced with the structure of the ConditionBean applied it
+     * (see {@link CBStructure}). Other arguments are kept only if they are simple values, e.g. numbers and strings,
+     * and the others, e.g. entities, are replaced with {@code null}.
+     * The lambda, the objects captured by it and the ConditionBean are no longer referenced from the copy.
+     * @param factory the factory of ConditionBean implementation
+     * @return the materialized call, or this call if no lambda argument was passed
+     */
+    public BehaviorCall materialize(ConditionBeanFactory<?> factory) {
+        if (getCBCall() == null) {
+            return this;
+        }
+        CBStructure snapshot = snapshot(factory);
+        return new BehaviorCall(behaviorType, method, reduceArguments(), threadName, threadId, sequence, snapshot, null);
+    }
+
+    /**
+     * Returns a copy of this call that has only the fingerprint of the ConditionBean, without any argument.
+     * @param factory the factory of ConditionBean implementation
+     * @return the reduced call
+     */
+    public BehaviorCall fingerprint(ConditionBeanFactory<?> factory) {
+        Long print = null;
+        if (structure != null) {
+            print = structure.getValueFingerprint();
+        } else if (getCBCall() != null) {
+            print = fingerprintOf(factory);
+        }
+        return new BehaviorCall(behaviorType, method, new Object[0], threadName, threadId, sequence, null, print);
+    }
+
+    private <CB extends ConditionBean> CBStructure snapshot(ConditionBeanFactory<CB> factory) {
+        CB cb = factory.replay(this.<CB> getCBCall());
+        try {
+            return CBStructure.of(cb);
+        } finally {
+            factory.release(cb);
+        }
+    }
+
+    private <CB extends ConditionBean> long fingerprintOf(ConditionBeanFactory<CB> factory) {
+        CB cb = factory.replay(this.<CB> getCBCall());
+        try {
+            return CBStructure.fingerprint(cb.toDisplaySql());
+        } finally {
+            factory.release(cb);
+        }
+    }
+
+    private Object[] reduceArguments() {
+        Object[] args = new Object[arguments.length];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = arguments[i];
+            if (arg instanceof String || arg instanceof Number || arg instanceof Boolean || arg instanceof Character
+                    || arg instanceof Enum) {
+                args[i] = arg;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Returns the first lambda argument of ConditionBean.
+     * @return the lambda argument, or {@code null} if no lambda argument was passed
+     */
+    @SuppressWarnings("unchecked")
+    public <CB extends ConditionBean> CBCall<CB> getCBCall() {
+        for (Object argument : arguments) {
+            if (argument instanceof CBCall) {
+                return (CBCall<CB>) argument;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new {@code CB} instance that was applied lambda argument of this call.
+     * @param clazz the class of ConditionBean implementation
+     * @return a new {@code CB}, or {@code null} if no lambda argument was passed
+     */
+    public <CB extends ConditionBean> CB getCB(Class<CB> clazz) {
+        return getCB(ConditionBeanFactory.of(clazz));
+    }
+
+    /**
+     * Returns a new {@code CB} instance that was applied lambda argument of this call.
+     * @param factory the factory of ConditionBean implementation
+     * @return a new {@code CB}, or {@code null} if no lambda argument was passed
+     * @throws IllegalStateException this call was materialized, use {@link #getStructure()} instead
+     */
+    public <CB extends ConditionBean> CB getCB(ConditionBeanFactory<CB> factory) {
+        if (structure != null) {
+            throw new IllegalStateException("The lambda argument was dropped by materialization: " + this);
+        }
+        CBCall<CB> call = getCBCall();
+        if (call == null) {
+            return null;
+        }
+        return factory.replay(call);
+    }
+
+    /**
+     * Returns the argument to be evaluated by ConditionBean matchers:
+     * the structure of ConditionBean if materialized, otherwise the lambda argument.
+     * A structure is matched by structure matchers, e.g. {@code recordedIn(file)}, and not by condition matchers.
+     * @return the structure or the lambda argument, or {@code null} if none
+     */
+    public Object getCBArgument() {
+        if (structure != null) {
+            return structure;
+        }
+        return getCBCall();
+    }
+
+    /**
+     * Returns the structure of ConditionBean if this call was materialized.
+     * @return the structure, or {@code null}
+     */
+    public CBStructure getStructure() {
+        return structure;
+    }
+
+    /**
+     * Returns the fingerprint of ConditionBean if this call was reduced to fingerprint.
+     * @return the fingerprint, or {@code null}
+     */
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the class of Behavior, or its mock, whose method was called.
+     * @return the class of Behavior
+     */
+    public Class<?> getBehaviorType() {
+        return behaviorType;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getMethodName() {
+        return method.getName();
+    }
+
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + method.getName() + " on " + threadName;
+    }
+}
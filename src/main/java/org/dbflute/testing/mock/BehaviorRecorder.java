@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Records Behavior calls into an append-only log without Mockito's verification bookkeeping.
+ *
+ * <p>
+ * Each call is recorded as {@link BehaviorCall} with the calling thread and the sequence number.
+ * The log is a lock-free queue by default, so Behaviors can be called from many threads.
+ * For long-running tests, {@link CapturePolicy} bounds the memory used by recorded calls.
+ * Recorded lambda arguments can be evaluated by existing matchers such as
+ * {@link org.dbflute.testing.DBFluteMatchers#cb(Class, Matcher)}.
+ *
+ * <pre class="code"><code class="java">
+ * BehaviorRecorder recorder = new BehaviorRecorder();
+ * MemberBhv bhv = recorder.mock(MemberBhv.class);
+ * service.execute(bhv);
+ *
+ * assertThat(recorder, hasCall("selectList", cb(MemberCB.class, hasCondition("memberId", equal(1)))));
+ * MemberCB cb = recorder.getCalls("selectList").get(0).getCB(MemberCB.class);
+ * </code></pre>
+ *
+ * <p>
+ * Since Behavior is a class, {@link #mock(Class)} still creates a Mockito mock to stand in for it,
+ * but the mock is stub-only, so Mockito does not keep invocations for verification.
+ * For interface types, {@link #proxy(Class)} creates a JDK dynamic proxy without Mockito.
+ * Stubbing a stub-only mock by {@code when(...)} calls the method, so call {@link #clear()} after stubbing.
+ *
+ * @author taktos
+ *
+ */
+public class BehaviorRecorder implements Answer<Object> {
+
+    private final CapturePolicy policy;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a new recorder that keeps all calls.
+     */
+    public BehaviorRecorder() {
+        this(CapturePolicy.all());
+    }
+
+    /**
+     * Creates a new recorder that keeps calls according to {@code policy}.
+     * @param policy the capture policy, not shared with other recorders
+     */
+    public BehaviorRecorder(CapturePolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Creates a stub-only mock of {@code behaviorType} that records all calls to this recorder.
+     * @param behaviorType the class of Behavior
+     * @return the mock
+     */
+    public <B> B mock(Class<B> behaviorType) {
+        return Mockito.mock(behaviorType, Mockito.withSettings().stubOnly().defaultAnswer(this));
+    }
+
+    /**
+     * Creates a dynamic proxy of {@code interfaceType} that records all calls to this recorder.
+     * The proxy returns default values ({@code null}, {@code 0} or {@code false}).
+     * @param interfaceType the interface to implement
+     * @return the proxy
+     */
+    public <I> I proxy(Class<I> interfaceType) {
+        return proxy(interfaceType, null);
+    }
+
+    /**
+     * Creates a dynamic proxy of {@code interfaceType} that records all calls to this recorder
+     * and then delegates them to {@code delegate}.
+     * @param interfaceType the interface to implement
+     * @param delegate the object that handles calls, or {@code null} to return default values
+     * @return the proxy
+     */
+    public <I> I proxy(final Class<I> interfaceType, final I delegate) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return invokeObjectMethod(proxy, method, args);
+                }
+                record(interfaceType, method, args);
+                if (delegate == null) {
+                    return defaultValue(method.getReturnType());
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        Object proxy = Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[] { interfaceType }, handler);
+        return interfaceType.cast(proxy);
+    }
+
+    /**
+     * Records the call and returns default value. This is the default answer of {@link #mock(Class)}.
+     */
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+        record(invocation.getMock().getClass(), invocation.getMethod(), invocation.getArguments());
+        return Mockito.RETURNS_DEFAULTS.answer(invocation);
+    }
+
+    /**
+     * Appends a call to the log.
+     * @param method the called method
+     * @param args the arguments
+     * @return the recorded call
+     */
+    public BehaviorCall record(Method method, Object[] args) {
+        return record(method.getDeclaringClass(), method, args);
+    }
+
+    /**
+     * Appends a call to the log.
+     * @param behaviorType the class of Behavior, or its mock, whose method was called
+     * @param method the called method
+     * @param args the arguments
+     * @return the recorded call
+     */
+    public BehaviorCall record(Class<?> behaviorType, Method method, Object[] args) {
+        BehaviorCall call = new BehaviorCall(behaviorType, method, args, Thread.currentThread(), sequence.incrementAndGet());
+        policy.offer(call);
+        return call;
+    }
+
+    /**
+     * Returns recorded calls kept by the capture policy, ordered by sequence.
+     * @return the snapshot of recorded calls
+     */
+    public List<BehaviorCall> getCalls() {
+        return policy.snapshot();
+    }
+
+    /**
+     * Returns the number of all calls, including calls which were not kept by the capture policy.
+     * @return the number of calls since created or cleared
+     */
+    public long getCallCount() {
+        return sequence.get();
+    }
+
+    /**
+     * Returns recorded calls of {@code methodName} ordered by sequence.
+     * @param methodName the name of Behavior method, e.g. "selectList"
+     * @return the snapshot of recorded calls
+     */
+    public List<BehaviorCall> getCalls(String methodName) {
+        List<BehaviorCall> list = new ArrayList<BehaviorCall>();
+        for (BehaviorCall call : getCalls()) {
+            if (call.getMethodName().equals(methodName)) {
+                list.add(call);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns recorded calls of {@code methodName} whose lambda argument matches {@code cbCallMatcher}.
+     * @param methodName the name of Behavior method, e.g. "selectList"
+     * @param cbCallMatcher the matcher that evaluates lambda argument, e.g. {@code cb(MemberCB.class, ...)}
+     * @return the matched calls
+     */
+    public List<BehaviorCall> getCalls(String methodName, Matcher<?> cbCallMatcher) {
+        List<BehaviorCall> list = new ArrayList<BehaviorCall>();
+        for (BehaviorCall call : getCalls(methodName)) {
+            if (cbCallMatcher.matches(call.getCBArgument())) {
+                list.add(call);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a new recorder that has the recorded calls made on the thread named {@code threadName}.
+     * Calls keep their original sequence numbers.
+     * The new recorder keeps calls by a policy of the same kind and capacity as this recorder.
+     * Calls dropped by a bounded policy of this recorder are not visible to the new recorder,
+     * and its {@link #getCallCount()} is the number of calls it received.
+     * @param threadName the name of thread
+     * @return the new recorder
+     */
+    public BehaviorRecorder forThread(String threadName) {
+        BehaviorRecorder recorder = new BehaviorRecorder(policy.newEmpty());
+        for (BehaviorCall call : getCalls()) {
+            if (call.getThreadName().equals(threadName)) {
+                recorder.keep(call);
+            }
+        }
+        return recorder;
+    }
+
+    /**
+     * Groups the recorded calls by the name of calling thread in one pass.
+     * Each recorder is the same as {@link #forThread(String)} of the thread name.
+     * @return the map of thread name and recorder, ordered by the first call of each thread
+     */
+    public Map<String, BehaviorRecorder> byThread() {
+        Map<String, BehaviorRecorder> map = new LinkedHashMap<String, BehaviorRecorder>();
+        for (BehaviorCall call : getCalls()) {
+            BehaviorRecorder recorder = map.get(call.getThreadName());
+            if (recorder == null) {
+                recorder = new BehaviorRecorder(policy.newEmpty());
+                map.put(call.getThreadName(), recorder);
+            }
+            recorder.keep(call);
+        }
+        return map;
+    }
+
+    /**
+     * Returns an empty recorder with a policy of the same kind and capacity as this recorder.
+     * @return the new recorder
+     */
+    BehaviorRecorder newEmpty() {
+        return new BehaviorRecorder(policy.newEmpty());
+    }
+
+    private void keep(BehaviorCall call) {
+        policy.offer(call);
+        sequence.incrementAndGet();
+    }
+
+    /**
+     * Discards all recorded calls.
+     */
+    public void clear() {
+        policy.clear();
+        sequence.set(0);
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("equals")) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return "Recording proxy of " + proxy.getClass().getInterfaces()[0].getName();
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a matcher that matches when the recorder has any call of {@code methodName}
+     * whose lambda argument matches {@code cbCallMatcher}.
+     * <p>Example:
+     * <pre>{@code
+     * assertThat(recorder, hasCall("selectList", cb(MemberCB.class, hasCondition("memberId", equal(1)))));
+     * }</pre>
+     * @param methodName the name of Behavior method
+     * @param cbCallMatcher the matcher that evaluates lambda argument
+     */
+    public static Matcher<BehaviorRecorder> hasCall(final String methodName, final Matcher<?> cbCallMatcher) {
+        return new BaseMatcher<BehaviorRecorder>() {
+            @Override
+            public boolean matches(Object item) {
+                if (!(item instanceof BehaviorRecorder)) {
+                    return false;
+                }
+                for (BehaviorCall call : ((BehaviorRecorder) item).getCalls(methodName)) {
+                    if (cbCallMatcher.matches(call.getCBArgument())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText(methodName + " called with ");
+                description.appendDescriptionOf(cbCallMatcher);
+            }
+
+            @Override
+            public void describeMismatch(Object item, Description description) {
+                if (!(item instanceof BehaviorRecorder)) {
+                    description.appendText("was ").appendValue(item);
+                    return;
+                }
+                int count = ((BehaviorRecorder) item).getCalls(methodName).size();
+                description.appendText(methodName + " was called " + count + " time(s) but none matched");
+            }
+        };
+    }
+}
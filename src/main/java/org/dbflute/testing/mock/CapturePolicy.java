@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.dbflute.cbean.ConditionBean;
+
+/**
+ * Policy of which calls {@link BehaviorRecorder} keeps and in what form.
+ *
+ * <p>
+ * A policy holds the recorded calls, so create a new instance for each recorder.
+ * <pre class="code"><code class="java">
+ * // keeps the last 1000 calls, each materialized into the structure of ConditionBean
+ * BehaviorRecorder recorder = new BehaviorRecorder(CapturePolicy.lastN(1000).materialize());
+ * </code></pre>
+ *
+ * <ul>
+ * <li>{@link #all()} keeps every call.</li>
+ * <li>{@link #lastN(int)} keeps the last N calls in a ring buffer.</li>
+ * <li>{@link #reservoir(int, long)} keeps K calls sampled uniformly from all calls.</li>
+ * </ul>
+ * In addition, {@link #materialize()} and {@link #fingerprintOnly()} reduce each call
+ * as soon as it is recorded, so the lambda argument and the objects captured by its closure are not retained.
+ * The ConditionBean type is derived from the Behavior of each call (see {@link ConditionBeanFactory#ofBehavior(Class)}),
+ * so a recorder shared by several Behaviors applies each lambda to the right ConditionBean.
+ * Use {@link #factory(Class, ConditionBeanFactory)} for Behaviors that do not declare {@code newConditionBean()}.
+ *
+ * @author taktos
+ *
+ */
+public abstract class CapturePolicy {
+
+    static final Comparator<BehaviorCall> SEQUENCE_ORDER = new Comparator<BehaviorCall>() {
+        @Override
+        public int compare(BehaviorCall o1, BehaviorCall o2) {
+            return o1.getSequence() < o2.getSequence() ? -1 : (o1.getSequence() == o2.getSequence() ? 0 : 1);
+        }
+    };
+
+    private Reduction reduction = Reduction.NONE;
+    private final ConcurrentMap<Class<?>, ConditionBeanFactory<?>> factories = new ConcurrentHashMap<Class<?>, ConditionBeanFactory<?>>();
+
+    private enum Reduction {
+        NONE, MATERIALIZE, FINGERPRINT
+    }
+
+    /**
+     * Keeps {@code call}, reduced as configured.
+     * @param call the recorded call
+     */
+    public void offer(BehaviorCall call) {
+        switch (reduction) {
+        case MATERIALIZE:
+            store(call.getCBCall() == null ? call : call.materialize(getFactory(call.getBehaviorType())));
+            break;
+        case FINGERPRINT:
+            store(call.fingerprint(call.getCBCall() == null ? null : getFactory(call.getBehaviorType())));
+            break;
+        default:
+            store(call);
+        }
+    }
+
+    /**
+     * Returns the kept calls ordered by sequence.
+     * @return the snapshot of kept calls
+     */
+    public abstract List<BehaviorCall> snapshot();
+
+    /**
+     * Discards all kept calls.
+     */
+    public abstract void clear();
+
+    protected abstract void store(BehaviorCall call);
+
+    /**
+     * Creates an empty policy of the same kind and capacity, without reduction,
+     * to keep calls that were already reduced by this policy.
+     * @return a new policy
+     */
+    abstract CapturePolicy newEmpty();
+
+    /**
+     * Materializes lambda argument into the structure of ConditionBean ({@link BehaviorCall#materialize(ConditionBeanFactory)})
+     * when the call is recorded, and drops the lambda and the arguments other than simple values.
+     * @return this policy
+     */
+    public CapturePolicy materialize() {
+        reduction = Reduction.MATERIALIZE;
+        return this;
+    }
+
+    /**
+     * Reduces each call to the fingerprint of its ConditionBean ({@link ConditionBean#toDisplaySql()})
+     * and drops all arguments.
+     * @return this policy
+     */
+    public CapturePolicy fingerprintOnly() {
+        reduction = Reduction.FINGERPRINT;
+        return this;
+    }
+
+    /**
+     * Uses {@code factory} to create ConditionBean for calls of {@code behaviorType} and its subtypes.
+     * @param behaviorType the class of Behavior
+     * @param factory the factory of ConditionBean implementation
+     * @return this policy
+     */
+    public CapturePolicy factory(Class<?> behaviorType, ConditionBeanFactory<?> factory) {
+        factories.put(behaviorType, factory);
+        return this;
+    }
+
+    private ConditionBeanFactory<?> getFactory(Class<?> behaviorType) {
+        ConditionBeanFactory<?> factory = factories.get(behaviorType);
+        if (factory != null) {
+            return factory;
+        }
+        for (Map.Entry<Class<?>, ConditionBeanFactory<?>> entry : factories.entrySet()) {
+            if (entry.getKey().isAssignableFrom(behaviorType)) {
+                return entry.getValue();
+            }
+        }
+        return ConditionBeanFactory.ofBehavior(behaviorType);
+    }
+
+    /**
+     * Creates a policy that keeps all calls.
+     * @return a new policy
+     */
+    public static CapturePolicy all() {
+        return new KeepAll();
+    }
+
+    /**
+     * Creates a policy that keeps the last {@code n} calls.
+     * @param n the number of calls to keep
+     * @return a new policy
+     */
+    public static CapturePolicy lastN(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        return new KeepLast(n);
+    }
+
+    /**
+     * Creates a policy that keeps {@code k} calls by reservoir sampling.
+     * @param k the number of calls to keep
+     * @param seed the seed of random sampling, to make the result reproducible
+     * @return a new policy
+     */
+    public static CapturePolicy reservoir(int k, long seed) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        return new Reservoir(k, seed);
+    }
+
+    private static class KeepAll extends CapturePolicy {
+        private final ConcurrentLinkedQueue<BehaviorCall> calls = new ConcurrentLinkedQueue<BehaviorCall>();
+
+        @Override
+        CapturePolicy newEmpty() {
+            return new KeepAll();
+        }
+
+        @Override
+        protected void store(BehaviorCall call) {
+            calls.add(call);
+        }
+
+        @Override
+        public List<BehaviorCall> snapshot() {
+            List<BehaviorCall> list = new ArrayList<BehaviorCall>(calls);
+            Collections.sort(list, SEQUENCE_ORDER);
+            return list;
+        }
+
+        @Override
+        public void clear() {
+            calls.clear();
+        }
+    }
+
+    private static class KeepLast extends CapturePolicy {
+        private final AtomicReferenceArray<BehaviorCall> ring;
+        private final AtomicLong index = new AtomicLong();
+
+        KeepLast(int n) {
+            this.ring = new AtomicReferenceArray<BehaviorCall>(n);
+        }
+
+        @Override
+        CapturePolicy newEmpty() {
+            return new KeepLast(ring.length());
+        }
+
+        @Override
+        protected void store(BehaviorCall call) {
+            int slot = (int) (index.getAndIncrement() % ring.length());
+            // an older call may reach its slot after a newer call wrapped around to it
+            while (true) {
+                BehaviorCall current = ring.get(slot);
+                if (current != null && current.getSequence() > call.getSequence()) {
+                    return;
+                }
+                if (ring.compareAndSet(slot, current, call)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public List<BehaviorCall> snapshot() {
+            List<BehaviorCall> list = new ArrayList<BehaviorCall>(ring.length());
+            for (int i = 0; i < ring.length(); i++) {
+                BehaviorCall call = ring.get(i);
+                if (call != null) {
+                    list.add(call);
+                }
+            }
+            Collections.sort(list, SEQUENCE_ORDER);
+            return list;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < ring.length(); i++) {
+                ring.set(i, null);
+            }
+            index.set(0);
+        }
+    }
+
+    private static class Reservoir extends CapturePolicy {
+        private final int k;
+        private final long seed;
+        private final List<BehaviorCall> samples;
+        private Random random;
+        private long count;
+
+        Reservoir(int k, long seed) {
+            this.k = k;
+            this.seed = seed;
+            this.samples = new ArrayList<BehaviorCall>(k);
+            this.random = new Random(seed);
+        }
+
+        @Override
+        CapturePolicy newEmpty() {
+            return new Reservoir(k, seed);
+        }
+
+        @Override
+        protected synchronized void store(BehaviorCall call) {
+            count++;
+            if (samples.size() < k) {
+                samples.add(call);
+                return;
+            }
+            long j = (long) (random.nextDouble() * count);
+            if (j < k) {
+                samples.set((int) j, call);
+            }
+        }
+
+        @Override
+        public synchronized List<BehaviorCall> snapshot() {
+            List<BehaviorCall> list = new ArrayList<BehaviorCall>(samples);
+            Collections.sort(list, SEQUENCE_ORDER);
+            return list;
+        }
+
+        @Override
+        public synchronized void clear() {
+            samples.clear();
+            count = 0;
+            random = new Random(seed);
+        }
+    }
+}
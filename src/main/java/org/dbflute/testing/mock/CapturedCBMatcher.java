@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.cbean.ConditionBean;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * Matcher that evaluates all ConditionBeans captured by {@link BehaviorArgumentCaptor} in parallel.
+ *
+ * <p>
+ * Each lambda argument is replayed on a new ConditionBean and evaluated on the common fork-join pool.
+ * {@link #everyCB(Matcher)} and {@link #anyCB(Matcher)} stop at the first call that decides the result.
+ * Exceptions thrown by the lambda or the matcher are not treated as mismatches but propagate to the caller.
+ * The mismatch report lists failed calls ordered by invocation index, so it is the same on every run.
+ *
+ * <pre class="code"><code class="java">
+ * BehaviorArgumentCaptor&lt;MemberCB&gt; captor = BehaviorArgumentCaptor.of(MemberCB.class);
+ * verify(mockBhv, atLeastOnce()).selectList(captor.capture());
+ * assertThat(captor, everyCB(hasCondition("memberId", equal(1))));
+ * assertThat(captor, countCB(hasCondition("memberStatusCode", equal("FML")), is(3)));
+ * </code></pre>
+ *
+ * <p>
+ * The subsequent matcher is called from multiple threads, so it must not keep state.
+ * All matchers in this library are stateless.
+ *
+ * @param <CB> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class CapturedCBMatcher<CB extends ConditionBean> extends BaseMatcher<BehaviorArgumentCaptor<CB>> {
+
+    private static final int THRESHOLD = 64;
+    private static final int MAX_REPORTED = 10;
+
+    private enum Mode {
+        EVERY, ANY, COUNT
+    }
+
+    private final Mode mode;
+    private final Matcher<? super CB> matcher;
+    private final Matcher<? super Integer> countMatcher;
+
+    private CapturedCBMatcher(Mode mode, Matcher<? super CB> matcher, Matcher<? super Integer> countMatcher) {
+        this.mode = mode;
+        this.matcher = matcher;
+        this.countMatcher = countMatcher;
+    }
+
+    @Override
+    public boolean matches(Object item) {
+        if (!(item instanceof BehaviorArgumentCaptor)) {
+            return false;
+        }
+        return judge(evaluate(captorOf(item), mode != Mode.COUNT));
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        switch (mode) {
+        case EVERY:
+            description.appendText("every captured ConditionBean ");
+            break;
+        case ANY:
+            description.appendText("any captured ConditionBean ");
+            break;
+        default:
+            description.appendDescriptionOf(countMatcher).appendText(" captured ConditionBean(s) ");
+        }
+        description.appendDescriptionOf(matcher);
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        if (!(item instanceof BehaviorArgumentCaptor)) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        BehaviorArgumentCaptor<CB> captor = captorOf(item);
+        boolean[] results = evaluate(captor, false);
+        int matched = countMatched(results);
+        description.appendText(matched + " of " + results.length + " matched");
+        if (mode == Mode.ANY) {
+            return;
+        }
+        if (mode == Mode.COUNT) {
+            description.appendText(", count ");
+            countMatcher.describeMismatch(matched, description);
+        }
+        List<CBCall<CB>> calls = captor.getAllCalls();
+        int reported = 0;
+        for (int i = 0; i < results.length && reported < MAX_REPORTED; i++) {
+            if (!results[i]) {
+                description.appendText("\n    #" + i + ": ");
+                describeMismatch(calls.get(i), captor.getFactory(), description);
+                reported++;
+            }
+        }
+        int failed = results.length - matched;
+        if (failed > reported) {
+            description.appendText("\n    ... and " + (failed - reported) + " more");
+        }
+    }
+
+    private void describeMismatch(CBCall<CB> call, ConditionBeanFactory<CB> factory, Description description) {
+        CB cb = factory.replay(call);
+        try {
+            matcher.describeMismatch(cb, description);
+        } finally {
+            factory.release(cb);
+        }
+    }
+
+    private boolean judge(boolean[] results) {
+        int matched = countMatched(results);
+        switch (mode) {
+        case EVERY:
+            return matched == results.length;
+        case ANY:
+            return matched > 0;
+        default:
+            return countMatcher.matches(matched);
+        }
+    }
+
+    /**
+     * Evaluates all calls in parallel.
+     * When {@code decisive} is true, stops at the first call that decides the result
+     * (a match for ANY, a mismatch for EVERY) and leaves the rest unevaluated,
+     * which does not change the judgement.
+     */
+    private boolean[] evaluate(BehaviorArgumentCaptor<CB> captor, boolean decisive) {
+        List<CBCall<CB>> calls = captor.getAllCalls();
+        boolean[] results = new boolean[calls.size()];
+        if (mode == Mode.EVERY) {
+            // unevaluated calls must not count as mismatches
+            Arrays.fill(results, true);
+        }
+        AtomicBoolean decided = decisive ? new AtomicBoolean() : null;
+        ForkJoinPool.commonPool().invoke(new Evaluation(calls, captor.getFactory(), results, decided, 0, results.length));
+        return results;
+    }
+
+    private static int countMatched(boolean[] results) {
+        int count = 0;
+        for (boolean result : results) {
+            if (result) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BehaviorArgumentCaptor<CB> captorOf(Object item) {
+        return (BehaviorArgumentCaptor<CB>) item;
+    }
+
+    private class Evaluation extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<CBCall<CB>> calls;
+        private final ConditionBeanFactory<CB> factory;
+        private final boolean[] results;
+        private final AtomicBoolean decided;
+        private final int from;
+        private final int to;
+
+        Evaluation(List<CBCall<CB>> calls, ConditionBeanFactory<CB> factory, boolean[] results, AtomicBoolean decided,
+                int from, int to) {
+            this.calls = calls;
+            this.factory = factory;
+            this.results = results;
+            this.decided = decided;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to && (decided == null || !decided.get()); i++) {
+                    boolean matched = evaluate(calls.get(i));
+                    results[i] = matched;
+                    if (decided != null && matched == (mode == Mode.ANY)) {
+                        decided.set(true);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Evaluation(calls, factory, results, decided, from, mid),
+                    new Evaluation(calls, factory, results, decided, mid, to));
+        }
+
+        private boolean evaluate(CBCall<CB> call) {
+            CB cb = factory.replay(call);
+            try {
+                return matcher.matches(cb);
+            } finally {
+                factory.release(cb);
+            }
+        }
+    }
+
+    /**
+     * Creates a matcher that matches when all captured ConditionBeans match {@code matcher}.
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param <CB> the type of ConditionBean
+     * @return the matcher of captor
+     */
+    public static <CB extends ConditionBean> CapturedCBMatcher<CB> everyCB(Matcher<? super CB> matcher) {
+        return new CapturedCBMatcher<CB>(Mode.EVERY, matcher, null);
+    }
+
+    /**
+     * Creates a matcher that matches when at least one captured ConditionBean matches {@code matcher}.
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param <CB> the type of ConditionBean
+     * @return the matcher of captor
+     */
+    public static <CB extends ConditionBean> CapturedCBMatcher<CB> anyCB(Matcher<? super CB> matcher) {
+        return new CapturedCBMatcher<CB>(Mode.ANY, matcher, null);
+    }
+
+    /**
+     * Creates a matcher that matches when the number of captured ConditionBeans matching {@code matcher}
+     * satisfies {@code countMatcher}.
+     * @param matcher the matcher to apply to each ConditionBean
+     * @param countMatcher the matcher to apply to the number of matched ConditionBeans
+     * @param <CB> the type of ConditionBean
+     * @return the matcher of captor
+     */
+    public static <CB extends ConditionBean> CapturedCBMatcher<CB> countCB(Matcher<? super CB> matcher,
+            Matcher<? super Integer> countMatcher) {
+        return new CapturedCBMatcher<CB>(Mode.COUNT, matcher, countMatcher);
+    }
+}
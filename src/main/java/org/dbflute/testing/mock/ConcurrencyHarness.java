@@ -0,0 +1,423 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbflute.hook.AccessContext;
+import org.dbflute.testing.rule.AccessTimeProvider;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+/**
+ * Runs the code under test from many concurrent workers against mocked Behaviors.
+ *
+ * <p>
+ * Each worker runs on its own thread named {@code worker-N} with its own AccessContext,
+ * waits at a start gate so that all workers begin together, and runs the task for the given iterations.
+ * Behavior calls are recorded by {@link BehaviorRecorder} with the thread name and sequence,
+ * so invariants can be checked per worker by {@link #everyWorker(Matcher)} and across workers by the recorder.
+ * Per-worker checks see only the calls kept by the capture policy of the recorder;
+ * calls dropped by a bounded policy such as {@link CapturePolicy#lastN(int)} are not visible to them.
+ *
+ * <pre class="code"><code class="java">
+ * BehaviorRecorder recorder = new BehaviorRecorder();
+ * MemberBhv bhv = recorder.mock(MemberBhv.class);
+ * ConcurrencyHarness.Result result = ConcurrencyHarness.workers(1000).iterations(10).recorder(recorder)
+ *         .run(new ConcurrencyHarness.Task() {
+ *             public void run(int worker, int iteration) {
+ *                 service.register(bhv, "member" + worker);
+ *             }
+ *         });
+ * assertThat(result.getErrorCount(), is(0));
+ * assertThat(result, everyWorker(hasCall("insert", anything())));
+ * System.out.println(result);   // throughput and latency percentiles
+ * </code></pre>
+ *
+ * <p>
+ * Workers run on virtual threads when the runtime provides them (Java 21 or later),
+ * otherwise on a pool of platform threads, one for each worker.
+ *
+ * @author taktos
+ *
+ */
+public class ConcurrencyHarness {
+
+    /**
+     * The code under test run by each worker.
+     */
+    public interface Task {
+
+        /**
+         * Runs one iteration.
+         * @param worker the number of worker (0-origin)
+         * @param iteration the number of iteration in the worker (0-origin)
+         * @throws Exception any failure, which is recorded as error
+         */
+        void run(int worker, int iteration) throws Exception;
+    }
+
+    private static final int MAX_KEPT_ERRORS = 100;
+
+    private final int workers;
+    private int iterations = 1;
+    private BehaviorRecorder recorder;
+    private String userPrefix = "user";
+    private Timestamp accessTimestamp;
+    private long timeoutMillis = TimeUnit.MINUTES.toMillis(5);
+
+    private ConcurrencyHarness(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Creates a new harness of {@code workers} concurrent workers.
+     * @param workers the number of workers
+     * @return the harness
+     */
+    public static ConcurrencyHarness workers(int workers) {
+        return new ConcurrencyHarness(workers);
+    }
+
+    /**
+     * Sets the number of iterations of each worker. The default is 1.
+     * @param iterations the number of iterations
+     * @return this harness
+     */
+    public ConcurrencyHarness iterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Sets the recorder of mocked Behaviors, to be returned in the result.
+     * @param recorder the recorder
+     * @return this harness
+     */
+    public ConcurrencyHarness recorder(BehaviorRecorder recorder) {
+        this.recorder = recorder;
+        return this;
+    }
+
+    /**
+     * Sets the prefix of access user. The user of worker N is {@code prefix + N}. The default is "user".
+     * @param prefix the prefix of access user
+     * @return this harness
+     */
+    public ConcurrencyHarness accessUser(String prefix) {
+        this.userPrefix = prefix;
+        return this;
+    }
+
+    /**
+     * Fixes the access timestamp of all workers. By default the current time is used.
+     * @param timestamp the access timestamp
+     * @return this harness
+     */
+    public ConcurrencyHarness accessTimestamp(Timestamp timestamp) {
+        this.accessTimestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Sets the time to wait for all workers. The default is 5 minutes.
+     * @param timeout the time to wait
+     * @param unit the unit of {@code timeout}
+     * @return this harness
+     */
+    public ConcurrencyHarness timeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Runs {@code task} on all workers and waits for them.
+     * @param task the code under test
+     * @return the result
+     * @throws IllegalStateException workers did not finish within the timeout
+     */
+    public Result run(final Task task) {
+        final long[] latencies = new long[workers * iterations];
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final AtomicInteger errorCount = new AtomicInteger();
+        final CountDownLatch ready = new CountDownLatch(workers);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(workers);
+        ExecutorService executor = newExecutor();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final int worker = w;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Thread thread = Thread.currentThread();
+                        String originalName = thread.getName();
+                        thread.setName(workerName(worker));
+                        AccessContext.setAccessContextOnThread(createAccessContext(worker));
+                        try {
+                            ready.countDown();
+                            start.await();
+                            for (int i = 0; i < iterations; i++) {
+                                long begin = System.nanoTime();
+                                try {
+                                    task.run(worker, i);
+                                } catch (Throwable e) {
+                                    if (errorCount.incrementAndGet() <= MAX_KEPT_ERRORS) {
+                                        errors.add(e);
+                                    }
+                                }
+                                latencies[worker * iterations + i] = System.nanoTime() - begin;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            AccessContext.clearAccessContextOnThread();
+                            thread.setName(originalName);
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            long wallNanos;
+            try {
+                awaitOrFail(ready);
+                long begin = System.nanoTime();
+                start.countDown();
+                awaitOrFail(done);
+                wallNanos = System.nanoTime() - begin;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for workers.", e);
+            }
+            return new Result(workers, iterations, latencies, wallNanos, new ArrayList<Throwable>(errors), errorCount.get(), recorder);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void awaitOrFail(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Workers did not finish in " + timeoutMillis + "ms.");
+        }
+    }
+
+    private AccessContext createAccessContext(int worker) {
+        AccessContext accessContext = new AccessContext();
+        accessContext.setAccessUser(userPrefix + worker);
+        accessContext.setAccessProcess(workerName(worker));
+        accessContext.setAccessModule("");
+        return new AccessTimeProvider(accessTimestamp).install(accessContext);
+    }
+
+    private ExecutorService newExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            // virtual threads are not available
+        }
+        return Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "harness-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static String workerName(int worker) {
+        return "worker-" + worker;
+    }
+
+    /**
+     * Creates a matcher that matches when the calls of every worker match {@code matcher}.
+     * @param matcher the matcher applied to the recorder of each worker, e.g. {@code hasCall(...)}
+     * @return the matcher of result
+     */
+    public static Matcher<Result> everyWorker(final Matcher<? super BehaviorRecorder> matcher) {
+        return new BaseMatcher<Result>() {
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof Result && firstMismatch((Result) item) < 0;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("every worker ").appendDescriptionOf(matcher);
+            }
+
+            @Override
+            public void describeMismatch(Object item, Description description) {
+                if (!(item instanceof Result)) {
+                    description.appendText("was ").appendValue(item);
+                    return;
+                }
+                int worker = firstMismatch((Result) item);
+                description.appendText(workerName(worker) + " ");
+                matcher.describeMismatch(((Result) item).getRecorder(worker), description);
+            }
+
+            private int firstMismatch(Result result) {
+                for (int w = 0; w < result.getWorkers(); w++) {
+                    if (!matcher.matches(result.getRecorder(w))) {
+                        return w;
+                    }
+                }
+                return -1;
+            }
+        };
+    }
+
+    /**
+     * Result of a harness run.
+     */
+    public static class Result {
+        private final int workers;
+        private final int iterations;
+        private final long[] sortedLatencies;
+        private final long wallNanos;
+        private final List<Throwable> errors;
+        private final int errorCount;
+        private final BehaviorRecorder recorder;
+        private Map<String, BehaviorRecorder> workerRecorders;
+
+        Result(int workers, int iterations, long[] latencies, long wallNanos, List<Throwable> errors, int errorCount,
+                BehaviorRecorder recorder) {
+            this.workers = workers;
+            this.iterations = iterations;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+            this.wallNanos = wallNanos;
+            this.errors = errors;
+            this.errorCount = errorCount;
+            this.recorder = recorder;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Returns the time from the start gate to the end of the last worker.
+         * @return the time in nanoseconds
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * Returns the number of iterations completed per second over all workers.
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return wallNanos == 0 ? 0 : sortedLatencies.length * 1e9 / wallNanos;
+        }
+
+        /**
+         * Returns the latency of one iteration at {@code percentile} (nearest-rank).
+         * @param percentile the percentile in (0, 100]
+         * @return the latency in nanoseconds
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            return sortedLatencies[Math.max(rank, 1) - 1];
+        }
+
+        /**
+         * Returns the number of failed iterations.
+         * @return the number of errors
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * Returns the errors of failed iterations, up to 100.
+         * @return the errors
+         */
+        public List<Throwable> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the recorder of all workers.
+         * @return the recorder
+         * @throws IllegalStateException no recorder is given to the harness
+         */
+        public BehaviorRecorder getRecorder() {
+            if (recorder == null) {
+                throw new IllegalStateException("No recorder is given to the harness.");
+            }
+            return recorder;
+        }
+
+        /**
+         * Returns a recorder that has the calls of {@code worker}.
+         * The calls of all workers are grouped at the first call, in one pass over the recorded calls.
+         * Calls dropped by a bounded capture policy of the recorder are not visible to per-worker checks.
+         * @param worker the number of worker
+         * @return the recorder of the worker
+         * @throws IllegalStateException no recorder is given to the harness
+         */
+        public synchronized BehaviorRecorder getRecorder(int worker) {
+            if (workerRecorders == null) {
+                workerRecorders = getRecorder().byThread();
+            }
+            BehaviorRecorder workerRecorder = workerRecorders.get(workerName(worker));
+            return workerRecorder != null ? workerRecorder : getRecorder().newEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringDescription description = new StringDescription();
+            description.appendText(workers + " workers x " + iterations + " iterations in " + wallNanos / 1000000 + "ms");
+            description.appendText(String.format(", %.1f/s, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms, errors=%d",
+                    getThroughput(), getLatencyPercentile(50) / 1e6, getLatencyPercentile(90) / 1e6,
+                    getLatencyPercentile(99) / 1e6, getLatencyPercentile(100) / 1e6, errorCount));
+            return description.toString();
+        }
+    }
+}
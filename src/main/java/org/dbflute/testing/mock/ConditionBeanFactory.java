@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.testing.metrics.MatcherMetrics;
+
+/**
+ * Factory of ConditionBean instances that are passed to Behavior's lambda argument.
+ *
+ * <p>
+ * The factory created by {@link #of(Class)} invokes the default constructor through a {@link MethodHandle}.
+ * The factory is cached per ConditionBean class, so the constructor is looked up only once.
+ * If you want to create ConditionBean in your own way, use {@link #of(Supplier)}.
+ *
+ * <pre class="code"><code class="java">
+ * ConditionBeanFactory&lt;MemberCB&gt; factory = ConditionBeanFactory.of(MemberCB::new);
+ * verify(mockBhv).selectEntity(argCB(factory, hasCondition("memberId", equal(1))));
+ * </code></pre>
+ *
+ * @param <CB> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public abstract class ConditionBeanFactory<CB extends ConditionBean> {
+
+    private static final ConcurrentMap<Class<?>, ConditionBeanFactory<?>> FACTORY_CACHE = new ConcurrentHashMap<Class<?>, ConditionBeanFactory<?>>();
+    private static final ConcurrentMap<Class<?>, Class<? extends ConditionBean>> BEHAVIOR_CB_CACHE = new ConcurrentHashMap<Class<?>, Class<? extends ConditionBean>>();
+
+    /**
+     * Creates a new ConditionBean instance.
+     * @return a new {@code CB}
+     */
+    public abstract CB create();
+
+    /**
+     * Releases {@code cb} which is no longer used. This implementation does nothing.
+     * @param cb the ConditionBean created by this factory
+     */
+    public void release(CB cb) {
+    }
+
+    /**
+     * Creates a new ConditionBean and applies the lambda argument {@code call} to it.
+     * Every replay is counted as a materialization of {@link MatcherMetrics}.
+     * @param call the lambda argument of Behavior
+     * @return a new {@code CB}, to be released by {@link #release(ConditionBean)}
+     */
+    public CB replay(CBCall<CB> call) {
+        CB cb = create();
+        if (MatcherMetrics.ENABLED) {
+            MatcherMetrics.materialized();
+        }
+        boolean replayed = false;
+        try {
+            call.callback(cb);
+            replayed = true;
+            return cb;
+        } finally {
+            if (!replayed) {
+                release(cb);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the instances are reused after {@link #release(ConditionBean)}.
+     * @return {@code true} if the instances are pooled
+     */
+    public boolean isPooled() {
+        return false;
+    }
+
+    /**
+     * Returns the factory that creates {@code clazz} by its default constructor.
+     * @param clazz the class of ConditionBean implementation
+     * @return the factory, cached per class
+     * @throws IllegalArgumentException {@code clazz} does not have an accessible default constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <CB extends ConditionBean> ConditionBeanFactory<CB> of(Class<CB> clazz) {
+        ConditionBeanFactory<?> factory = FACTORY_CACHE.get(clazz);
+        if (MatcherMetrics.ENABLED) {
+            if (factory == null) {
+                MatcherMetrics.cacheMiss();
+            } else {
+                MatcherMetrics.cacheHit();
+            }
+        }
+        if (factory == null) {
+            factory = new ConstructorFactory<CB>(clazz);
+            ConditionBeanFactory<?> existing = FACTORY_CACHE.putIfAbsent(clazz, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return (ConditionBeanFactory<CB>) factory;
+    }
+
+    /**
+     * Returns the factory of ConditionBean used by {@code behaviorType},
+     * which is the return type of {@code newConditionBean()} of the Behavior.
+     * @param behaviorType the class of Behavior, or its mock
+     * @return the factory, cached per class
+     * @throws IllegalArgumentException {@code behaviorType} does not declare {@code newConditionBean()} of a concrete class
+     */
+    public static ConditionBeanFactory<?> ofBehavior(Class<?> behaviorType) {
+        Class<? extends ConditionBean> cbType = BEHAVIOR_CB_CACHE.get(behaviorType);
+        if (cbType == null) {
+            cbType = findCBType(behaviorType);
+            BEHAVIOR_CB_CACHE.putIfAbsent(behaviorType, cbType);
+        }
+        return of(cbType);
+    }
+
+    private static Class<? extends ConditionBean> findCBType(Class<?> behaviorType) {
+        for (Method method : behaviorType.getMethods()) {
+            if (method.getName().equals("newConditionBean") && method.getParameterTypes().length == 0 && !method.isBridge()
+                    && ConditionBean.class.isAssignableFrom(method.getReturnType())
+                    && !Modifier.isAbstract(method.getReturnType().getModifiers())) {
+                return method.getReturnType().asSubclass(ConditionBean.class);
+            }
+        }
+        throw new IllegalArgumentException("Cannot find ConditionBean type of " + behaviorType.getName()
+                + ". It must have newConditionBean() that returns a ConditionBean implementation.");
+    }
+
+    /**
+     * Returns the factory that creates ConditionBean by {@code supplier}.
+     * @param supplier the supplier of {@code CB}, e.g. {@code MemberCB::new}
+     * @return the factory
+     */
+    public static <CB extends ConditionBean> ConditionBeanFactory<CB> of(Supplier<CB> supplier) {
+        return new SupplierFactory<CB>(supplier);
+    }
+
+    /**
+     * Returns a new pool that reuses the instances of {@code clazz}.
+     * @param clazz the class of ConditionBean implementation
+     * @return the pooling factory
+     * @see ConditionBeanPool
+     */
+    public static <CB extends ConditionBean> ConditionBeanPool<CB> pooled(Class<CB> clazz) {
+        return new ConditionBeanPool<CB>(of(clazz));
+    }
+
+    private static class ConstructorFactory<CB extends ConditionBean> extends ConditionBeanFactory<CB> {
+        private final Class<CB> clazz;
+        private final MethodHandle constructor;
+
+        ConstructorFactory(Class<CB> clazz) {
+            this.clazz = clazz;
+            try {
+                MethodHandle handle = MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class));
+                this.constructor = handle.asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("No default constructor found in " + clazz.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Default constructor of " + clazz.getName() + " is not accessible", e);
+            }
+        }
+
+        @Override
+        public CB create() {
+            try {
+                return clazz.cast((Object) constructor.invokeExact());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to create " + clazz.getName(), t);
+            }
+        }
+    }
+
+    private static class SupplierFactory<CB extends ConditionBean> extends ConditionBeanFactory<CB> {
+        private final Supplier<CB> supplier;
+
+        SupplierFactory(Supplier<CB> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public CB create() {
+            return supplier.get();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.cipher.GearedCipherManager;
+import org.dbflute.cbean.sqlclause.SqlClause;
+import org.dbflute.cbean.sqlclause.subquery.SubQueryIndentProcessor;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.DBMetaProvider;
+
+/**
+ * ConditionBean factory that reuses released instances.
+ *
+ * <p>
+ * A released ConditionBean is cleared (conditions, setup-select and relation queries, specification,
+ * order-by, paging and union) and kept in a pool owned by the current thread, so there is no contention.
+ * Clearing restores every field of the ConditionBean and its SqlClause that was null, a simple value
+ * or an empty collection when newly created.
+ * Before keeping it, the pool checks that the SqlClause has no where clause, order-by, paging, union or
+ * relation, and that the cleared fields are null or empty again; otherwise the instance is simply discarded.
+ * Only the first released instance of the pool is compared with a newly created one field by field,
+ * following nested objects, to validate that clearing works for the ConditionBean class.
+ *
+ * <pre class="code"><code class="java">
+ * ConditionBeanPool&lt;MemberCB&gt; pool = ConditionBeanFactory.pooled(MemberCB.class);
+ * verify(mockBhv, times(100000)).selectList(argCB(pool, hasCondition("memberId", equal(1))));
+ * </code></pre>
+ *
+ * <p>
+ * The instances returned by {@link #create()} must not be used after {@link #release(ConditionBean)}.
+ * So this pool is intended for {@link BehaviorArgumentMatcher} and not for {@link BehaviorArgumentCaptor}.
+ *
+ * @param <CB> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class ConditionBeanPool<CB extends ConditionBean> extends ConditionBeanFactory<CB> {
+
+    /**
+     * Types of fields that hold metadata or stateless helpers, and maps of them as cache, which do not affect conditions.
+     */
+    private static final List<Class<?>> IGNORED_TYPES = Arrays.<Class<?>> asList(DBMeta.class, DBMetaProvider.class,
+            GearedCipherManager.class, SubQueryIndentProcessor.class);
+
+    /** Pristine value of a field that was an empty collection or map. */
+    private static final Object EMPTY = new Object();
+    /** Pristine value of a field that was another object. */
+    private static final Object OTHER = new Object();
+
+    private static final int DEFAULT_MAX_IDLE = 8;
+    private static final int MAX_STATE_DEPTH = 4;
+    private static final ConcurrentMap<Class<?>, List<Field>> NESTED_FIELDS = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+    private final ConditionBeanFactory<CB> factory;
+    private final int maxIdle;
+    private final ThreadLocal<Deque<CB>> idle = new ThreadLocal<Deque<CB>>() {
+        @Override
+        protected Deque<CB> initialValue() {
+            return new ArrayDeque<CB>();
+        }
+    };
+
+    private volatile List<Field> stateFields;
+    private volatile List<Object> pristineValues;
+    private volatile List<Object> pristineState;
+    private volatile boolean validated;
+
+    /**
+     * Creates a new pool.
+     * @param factory the factory to create a new instance when the pool is empty
+     * @param maxIdle the maximum number of instances kept per thread
+     */
+    public ConditionBeanPool(ConditionBeanFactory<CB> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Creates a new pool that keeps 8 instances per thread at most.
+     * @param factory the factory to create a new instance when the pool is empty
+     */
+    public ConditionBeanPool(ConditionBeanFactory<CB> factory) {
+        this(factory, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Returns a pooled instance of the current thread, or a new instance if none is pooled.
+     */
+    @Override
+    public CB create() {
+        CB cb = idle.get().pollFirst();
+        if (cb != null) {
+            return cb;
+        }
+        cb = factory.create();
+        if (pristineState == null) {
+            initialize(cb);
+        }
+        return cb;
+    }
+
+    /**
+     * Clears {@code cb} and keeps it for the next {@link #create()} on the current thread.
+     * If {@code cb} could not be cleared completely, it is discarded.
+     */
+    @Override
+    public void release(CB cb) {
+        if (cb == null || pristineState == null) {
+            return;
+        }
+        Deque<CB> deque = idle.get();
+        if (deque.size() >= maxIdle) {
+            return;
+        }
+        try {
+            reset(cb);
+        } catch (RuntimeException e) {
+            // unsupported structure. just discard
+            return;
+        }
+        if (!isPristine(cb)) {
+            return;
+        }
+        if (!validated) {
+            if (!pristineState.equals(captureState(cb))) {
+                return;
+            }
+            validated = true;
+        }
+        deque.offerFirst(cb);
+    }
+
+    @Override
+    public boolean isPooled() {
+        return true;
+    }
+
+    /**
+     * Clears conditions, setup-select and relation queries, specification, order-by, paging and union of {@code cb}.
+     * @param cb the ConditionBean to clear
+     */
+    protected void reset(CB cb) {
+        SqlClause sqlClause = cb.getSqlClause();
+        sqlClause.clearWhereClauseOnBaseQuery();
+        sqlClause.clearBaseTableInlineWhereClause();
+        sqlClause.clearOuterJoinInlineWhereClause();
+        sqlClause.clearOrderBy();
+        sqlClause.clearSpecifiedSelectColumn();
+        sqlClause.clearSpecifiedDerivingSubQuery();
+        sqlClause.clearUnionQuery();
+        // setup-select, outer joins and paging have no clear method, so fields are restored.
+        // generated ConditionBean creates query and specification lazily, so they are restored to null
+        for (int i = 0; i < stateFields.size(); i++) {
+            Field field = stateFields.get(i);
+            Object owner = field.getDeclaringClass().isInstance(cb) ? cb : sqlClause;
+            restore(field, owner, pristineValues.get(i));
+        }
+    }
+
+    private void restore(Field field, Object owner, Object pristine) {
+        if (pristine == EMPTY) {
+            Object current = getField(field, owner);
+            if (current instanceof Collection) {
+                ((Collection<?>) current).clear();
+            } else if (current instanceof Map) {
+                ((Map<?, ?>) current).clear();
+            }
+        } else if (pristine != OTHER && !Modifier.isFinal(field.getModifiers())) {
+            setField(field, owner, pristine);
+        }
+    }
+
+    /**
+     * Checks {@code cb} has no condition and its cleared fields have the values of a newly created instance.
+     * This is called for every release, so it does not follow nested objects.
+     * @param cb the ConditionBean to check
+     * @return {@code true} if {@code cb} can be reused
+     */
+    protected boolean isPristine(CB cb) {
+        SqlClause sqlClause = cb.getSqlClause();
+        if (sqlClause.hasWhereClauseOnBaseQuery() || sqlClause.hasBaseTableInlineWhereClause()
+                || sqlClause.hasOuterJoinInlineWhereClause() || sqlClause.isOrScopeQueryEffective()
+                || sqlClause.hasOrderByClause() || sqlClause.isFetchScopeEffective() || sqlClause.hasUnionQuery()
+                || !sqlClause.isSelectedRelationEmpty() || sqlClause.hasOuterJoin()
+                || sqlClause.hasSpecifiedDerivingSubQuery()) {
+            return false;
+        }
+        for (int i = 0; i < stateFields.size(); i++) {
+            Field field = stateFields.get(i);
+            Object pristine = pristineValues.get(i);
+            if (pristine == OTHER) {
+                continue;
+            }
+            Object current = getField(field, field.getDeclaringClass().isInstance(cb) ? cb : sqlClause);
+            if (pristine == EMPTY) {
+                if (!isEmpty(current)) {
+                    return false;
+                }
+            } else if (pristine == null ? current != null : !pristine.equals(current)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(Object value) {
+        return (value instanceof Collection && ((Collection<?>) value).isEmpty())
+                || (value instanceof Map && ((Map<?, ?>) value).isEmpty());
+    }
+
+    private synchronized void initialize(CB cb) {
+        if (pristineState != null) {
+            return;
+        }
+        List<Field> states = new ArrayList<Field>();
+        for (Class<?> clazz = cb.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (isStateField(field)) {
+                    field.setAccessible(true);
+                    states.add(field);
+                }
+            }
+        }
+        for (Class<?> clazz = cb.getSqlClause().getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (isStateField(field)) {
+                    field.setAccessible(true);
+                    states.add(field);
+                }
+            }
+        }
+        List<Object> values = new ArrayList<Object>(states.size());
+        for (Field field : states) {
+            Object value = getField(field, field.getDeclaringClass().isInstance(cb) ? cb : cb.getSqlClause());
+            values.add(pristineValueOf(value));
+        }
+        this.stateFields = Collections.unmodifiableList(states);
+        this.pristineValues = Collections.unmodifiableList(values);
+        this.pristineState = captureState(cb);
+    }
+
+    private Object pristineValueOf(Object value) {
+        if (isSimple(value)) {
+            return value;
+        }
+        if (isEmpty(value)) {
+            return EMPTY;
+        }
+        return OTHER;
+    }
+
+    private boolean isStateField(Field field) {
+        return !Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() && !isIgnoredType(field);
+    }
+
+    private static boolean isIgnoredType(Field field) {
+        if (isIgnoredType(field.getType())) {
+            return true;
+        }
+        // e.g. DBMeta cached by table name
+        Type type = field.getGenericType();
+        if (Map.class.isAssignableFrom(field.getType()) && type instanceof ParameterizedType) {
+            Type valueType = ((ParameterizedType) type).getActualTypeArguments()[1];
+            return valueType instanceof Class && isIgnoredType((Class<?>) valueType);
+        }
+        return false;
+    }
+
+    private static boolean isIgnoredType(Class<?> type) {
+        for (Class<?> ignored : IGNORED_TYPES) {
+            if (ignored.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Object> captureState(CB cb) {
+        SqlClause sqlClause = cb.getSqlClause();
+        List<Object> state = new ArrayList<Object>(stateFields.size());
+        Set<Object> visiting = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        visiting.add(cb);
+        visiting.add(sqlClause);
+        for (Field field : stateFields) {
+            Object owner = field.getDeclaringClass().isInstance(cb) ? cb : sqlClause;
+            state.add(capture(getField(field, owner), 0, visiting));
+        }
+        return state;
+    }
+
+    /**
+     * Captures the comparable state of {@code value}, following collections and fields of nested objects.
+     */
+    private Object capture(Object value, int depth, Set<Object> visiting) {
+        if (isSimple(value) || value instanceof Class) {
+            return value;
+        }
+        if (!visiting.add(value)) {
+            return "<cycle " + value.getClass().getName() + ">";
+        }
+        try {
+            if (depth >= MAX_STATE_DEPTH || value.getClass().getName().startsWith("java.")
+                    && !(value instanceof Collection) && !(value instanceof Map) && !value.getClass().isArray()) {
+                return value.getClass().getName();
+            }
+            List<Object> state = new ArrayList<Object>();
+            state.add(value.getClass().getName());
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    state.add(capture(element, depth + 1, visiting));
+                }
+            } else if (value instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    state.add(capture(entry.getKey(), depth + 1, visiting));
+                    state.add(capture(entry.getValue(), depth + 1, visiting));
+                }
+            } else if (value instanceof Object[]) {
+                for (Object element : (Object[]) value) {
+                    state.add(capture(element, depth + 1, visiting));
+                }
+            } else if (!value.getClass().isArray()) {
+                for (Field field : getNestedFields(value.getClass())) {
+                    state.add(capture(getField(field, value), depth + 1, visiting));
+                }
+            }
+            return state;
+        } finally {
+            visiting.remove(value);
+        }
+    }
+
+    private List<Field> getNestedFields(Class<?> type) {
+        List<Field> fields = NESTED_FIELDS.get(type);
+        if (fields == null) {
+            fields = new ArrayList<Field>();
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (isStateField(field)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            fields = Collections.unmodifiableList(fields);
+            NESTED_FIELDS.putIfAbsent(type, fields);
+        }
+        return fields;
+    }
+
+    private static boolean isSimple(Object value) {
+        return value == null || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof String || value instanceof Enum;
+    }
+
+    private static Object getField(Field field, Object owner) {
+        try {
+            return field.get(owner);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read " + field, e);
+        }
+    }
+
+    private static void setField(Field field, Object owner, Object value) {
+        try {
+            field.set(owner, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot write " + field, e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.bhv.readable.EntityRowHandler;
+import org.dbflute.cbean.ConditionBean;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Answer for Behavior's {@code selectCursor(cbLambda, entityLambda)} that streams entities to the handler.
+ *
+ * <p>
+ * Like {@link BehaviorArgumentMatcher}, this answer replays the ConditionBean lambda on a new instance,
+ * then opens the {@link CursorSource} with it and pushes entities to the handler one by one.
+ * Entities are pulled from the source lazily, so the whole result is never kept in memory.
+ * The cursor stops when the handler returns {@code true} from {@link EntityRowHandler#isBreakCursor()}.
+ *
+ * <pre class="code"><code class="java">
+ * CursorAnswer&lt;MemberCB, Member&gt; answer = CursorAnswer.generate(MemberCB.class, 10000000L, i -&gt; {
+ *     Member member = new Member();
+ *     member.setMemberId((int) i);
+ *     return member;
+ * });
+ * doAnswer(answer).when(mockBhv).selectCursor(any(), any());
+ * exporter.export(mockBhv);
+ * assertThat(answer.getRowCount(), is(10000000L));
+ * </code></pre>
+ *
+ * @param <CB> the type of ConditionBean implementation
+ * @param <ENTITY> the type of entity
+ * @author taktos
+ *
+ */
+public class CursorAnswer<CB extends ConditionBean, ENTITY> implements Answer<Object> {
+
+    /**
+     * Source of entities for a cursor.
+     *
+     * @param <CB> the type of ConditionBean implementation
+     * @param <ENTITY> the type of entity
+     */
+    public interface CursorSource<CB extends ConditionBean, ENTITY> {
+
+        /**
+         * Opens entities for the cursor.
+         * @param cb the ConditionBean that was applied the lambda argument of the call
+         * @return the iterator of entities, which should create entities lazily
+         */
+        Iterator<? extends ENTITY> open(CB cb);
+    }
+
+    private final ConditionBeanFactory<CB> factory;
+    private final CursorSource<CB, ENTITY> source;
+    private final AtomicLong rowCount = new AtomicLong();
+    private final AtomicLong elapsedNanos = new AtomicLong();
+
+    /**
+     * Creates a new answer.
+     * @param factory the factory of ConditionBean implementation
+     * @param source the source of entities
+     */
+    public CursorAnswer(ConditionBeanFactory<CB> factory, CursorSource<CB, ENTITY> source) {
+        this.factory = factory;
+        this.source = source;
+    }
+
+    /**
+     * Replays the lambda argument and pushes entities to the handler argument.
+     * @throws IllegalArgumentException the call does not have {@link EntityRowHandler} argument
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+        CBCall<CB> cbCall = null;
+        EntityRowHandler<ENTITY> handler = null;
+        for (Object argument : invocation.getArguments()) {
+            if (argument instanceof CBCall && cbCall == null) {
+                cbCall = (CBCall<CB>) argument;
+            } else if (argument instanceof EntityRowHandler) {
+                handler = (EntityRowHandler<ENTITY>) argument;
+            }
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("No EntityRowHandler argument: " + invocation.getMethod());
+        }
+        CB cb = cbCall != null ? factory.replay(cbCall) : factory.create();
+        try {
+            stream(cb, handler);
+        } finally {
+            factory.release(cb);
+        }
+        return null;
+    }
+
+    private void stream(CB cb, EntityRowHandler<ENTITY> handler) {
+        long begin = System.nanoTime();
+        long count = 0;
+        try {
+            Iterator<? extends ENTITY> iterator = source.open(cb);
+            while (iterator.hasNext()) {
+                if (handler.isBreakCursor()) {
+                    break;
+                }
+                handler.handle(iterator.next());
+                count++;
+            }
+        } finally {
+            rowCount.addAndGet(count);
+            elapsedNanos.addAndGet(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Returns the number of entities pushed to handlers since created or reset.
+     * @return the number of entities
+     */
+    public long getRowCount() {
+        return rowCount.get();
+    }
+
+    /**
+     * Returns the total time spent in cursors (including the handlers) since created or reset.
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos.get();
+    }
+
+    /**
+     * Returns the throughput of cursors since created or reset.
+     * @return entities per second, or {@code 0} if no cursor has run
+     */
+    public double getRowsPerSecond() {
+        long nanos = elapsedNanos.get();
+        return nanos == 0 ? 0 : rowCount.get() * 1000000000d / nanos;
+    }
+
+    /**
+     * Resets the row count and the elapsed time.
+     */
+    public void reset() {
+        rowCount.set(0);
+        elapsedNanos.set(0);
+    }
+
+    /**
+     * Creates an answer that pushes entities of {@code entities} for each cursor.
+     * @param clazz the class of ConditionBean implementation
+     * @param entities the entities, iterated for each cursor
+     * @return a new answer
+     */
+    public static <CB extends ConditionBean, ENTITY> CursorAnswer<CB, ENTITY> of(Class<CB> clazz,
+            Iterable<? extends ENTITY> entities) {
+        return of(ConditionBeanFactory.of(clazz), entities);
+    }
+
+    /**
+     * Creates an answer that pushes entities of {@code entities} for each cursor.
+     * @param factory the factory of ConditionBean implementation
+     * @param entities the entities, iterated for each cursor
+     * @return a new answer
+     */
+    public static <CB extends ConditionBean, ENTITY> CursorAnswer<CB, ENTITY> of(ConditionBeanFactory<CB> factory,
+            final Iterable<? extends ENTITY> entities) {
+        return new CursorAnswer<CB, ENTITY>(factory, new CursorSource<CB, ENTITY>() {
+            @Override
+            public Iterator<? extends ENTITY> open(CB cb) {
+                return entities.iterator();
+            }
+        });
+    }
+
+    /**
+     * Creates an answer that generates {@code rows} entities by {@code generator} for each cursor.
+     * @param clazz the class of ConditionBean implementation
+     * @param rows the number of entities
+     * @param generator the function that creates an entity of the index (0-origin)
+     * @return a new answer
+     */
+    public static <CB extends ConditionBean, ENTITY> CursorAnswer<CB, ENTITY> generate(Class<CB> clazz, long rows,
+            LongFunction<? extends ENTITY> generator) {
+        return generate(ConditionBeanFactory.of(clazz), rows, generator);
+    }
+
+    /**
+     * Creates an answer that generates {@code rows} entities by {@code generator} for each cursor.
+     * @param factory the factory of ConditionBean implementation
+     * @param rows the number of entities
+     * @param generator the function that creates an entity of the index (0-origin)
+     * @return a new answer
+     * @throws IllegalArgumentException {@code rows} is negative
+     */
+    public static <CB extends ConditionBean, ENTITY> CursorAnswer<CB, ENTITY> generate(ConditionBeanFactory<CB> factory,
+            final long rows, final LongFunction<? extends ENTITY> generator) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must not be negative: " + rows);
+        }
+        return new CursorAnswer<CB, ENTITY>(factory, new CursorSource<CB, ENTITY>() {
+            @Override
+            public Iterator<? extends ENTITY> open(CB cb) {
+                return new GeneratingIterator<ENTITY>(rows, generator);
+            }
+        });
+    }
+
+    private static class GeneratingIterator<ENTITY> implements Iterator<ENTITY> {
+        private final long rows;
+        private final LongFunction<? extends ENTITY> generator;
+        private long index;
+
+        GeneratingIterator(long rows, LongFunction<? extends ENTITY> generator) {
+            this.rows = rows;
+            this.generator = generator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < rows;
+        }
+
+        @Override
+        public ENTITY next() {
+            if (index >= rows) {
+                throw new NoSuchElementException();
+            }
+            return generator.apply(index++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
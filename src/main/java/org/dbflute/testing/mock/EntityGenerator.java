@@ -0,0 +1,556 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.dbflute.Entity;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.dbmeta.info.UniqueInfo;
+import org.dbflute.jdbc.Classification;
+import org.dbflute.jdbc.ClassificationMeta;
+
+/**
+ * Generates synthetic entities from DBMeta column info.
+ *
+ * <p>
+ * The entity of an index is always the same for the same seed, and does not depend on other rows.
+ * So entities can be generated lazily, in any order, and from multiple threads.
+ * <ul>
+ * <li>Primary key and single-column unique key: derived from the index (1, 2, 3, ... or "1", "2", "3", ...).</li>
+ * <li>Foreign key to primary key: the key of a parent row whose index is in {@code [0, foreignRows)},
+ * so it refers to an entity that the generator of the parent table creates.
+ * All columns of a compound foreign key are derived from the same parent index.
+ * When the foreign key is also (a part of) a key, the index enumerates the combinations of parent keys,
+ * so the key stays unique up to the product of their {@code foreignRows}.</li>
+ * <li>Classification: one of the codes of the classification.</li>
+ * <li>Others: a random value of the native type within the column size.
+ * Nullable columns are {@code null} at the ratio of {@link #nullRatio(double)}.</li>
+ * </ul>
+ *
+ * <pre class="code"><code class="java">
+ * EntityGenerator&lt;MemberStatus&gt; statuses = EntityGenerator.of(MemberStatusDbm.getInstance(), MemberStatus.class, 1L);
+ * EntityGenerator&lt;Member&gt; members = EntityGenerator.of(MemberDbm.getInstance(), Member.class, 1L)
+ *         .foreignRows("memberStatus", 3);
+ * doAnswer(CursorAnswer.generate(MemberCB.class, 1000000L, members)).when(mockBhv).selectCursor(any(), any());
+ * </code></pre>
+ *
+ * <p>
+ * Values are written through the generated property gateway of {@link ColumnInfo#write(Entity, Object)},
+ * and how to generate each column is resolved once when configured, not for each row.
+ *
+ * @param <ENTITY> the type of entity
+ * @author taktos
+ *
+ */
+public class EntityGenerator<ENTITY extends Entity> implements LongFunction<ENTITY> {
+
+    private static final long DEFAULT_FOREIGN_ROWS = 100;
+    private static final int DEFAULT_STRING_LENGTH = 16;
+    private static final char[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final long EPOCH_DAY_2000 = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final int DAYS_RANGE = 365 * 30;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private enum Kind {
+        STRING, INTEGER, LONG, SHORT, BYTE, BIG_DECIMAL, BIG_INTEGER, DOUBLE, FLOAT, BOOLEAN, LOCAL_DATE, LOCAL_DATE_TIME, LOCAL_TIME, DATE, TIMESTAMP, TIME, BYTES, UUID, UNKNOWN
+    }
+
+    private enum Rule {
+        KEY, FOREIGN_KEY, FOREIGN_KEY_IN_KEY, CLASSIFICATION, RANDOM
+    }
+
+    private final DBMeta meta;
+    private final long seed;
+    private final Map<String, Long> foreignRowsMap = new HashMap<String, Long>();
+    private double nullRatio;
+    private volatile ColumnPlan[] plans;
+
+    /**
+     * Creates a new generator.
+     * @param meta the DBMeta of the table
+     * @param seed the seed of random values
+     */
+    public EntityGenerator(DBMeta meta, long seed) {
+        this.meta = meta;
+        this.seed = seed;
+        this.plans = plan();
+    }
+
+    /**
+     * Sets the number of rows in the table of {@code foreignPropertyName}.
+     * Foreign keys of the relation refer to one of them. The default is 100.
+     * @param foreignPropertyName the property name of the foreign relation, e.g. "memberStatus"
+     * @param rows the number of rows generated for the foreign table
+     * @return this generator
+     * @throws IllegalArgumentException the relation does not exist or {@code rows} is not positive
+     */
+    public synchronized EntityGenerator<ENTITY> foreignRows(String foreignPropertyName, long rows) {
+        if (!meta.hasForeign(foreignPropertyName)) {
+            throw new IllegalArgumentException("No foreign relation '" + foreignPropertyName + "' in " + meta.getTableDbName());
+        }
+        if (rows <= 0) {
+            throw new IllegalArgumentException("rows must be positive: " + rows);
+        }
+        foreignRowsMap.put(foreignPropertyName, rows);
+        this.plans = plan();
+        return this;
+    }
+
+    /**
+     * Sets the ratio of {@code null} for nullable columns that are not key. The default is 0.
+     * @param ratio the ratio between 0 and 1
+     * @return this generator
+     * @throws IllegalArgumentException {@code ratio} is out of range
+     */
+    public synchronized EntityGenerator<ENTITY> nullRatio(double ratio) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1: " + ratio);
+        }
+        this.nullRatio = ratio;
+        this.plans = plan();
+        return this;
+    }
+
+    /**
+     * Generates the entity of {@code index}.
+     * @param index the index of row (0-origin)
+     * @return a new entity
+     */
+    @SuppressWarnings("unchecked")
+    public ENTITY generate(long index) {
+        ENTITY entity = (ENTITY) meta.newEntity();
+        long row = mix(seed ^ mix(index + GOLDEN_GAMMA));
+        long state = row;
+        for (ColumnPlan plan : plans) {
+            state += GOLDEN_GAMMA;
+            Object value = plan.value(index, mix(state), row);
+            if (value != null) {
+                plan.column.write(entity, value);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Same as {@link #generate(long)}, so this generator can be passed to {@link CursorAnswer#generate(Class, long, LongFunction)}.
+     */
+    @Override
+    public ENTITY apply(long index) {
+        return generate(index);
+    }
+
+    /**
+     * Returns a lazy stream of entities from index 0 to {@code rows - 1}.
+     * The stream can be made parallel, since each entity depends only on its index.
+     * @param rows the number of entities
+     * @return the stream of entities
+     */
+    public Stream<ENTITY> stream(long rows) {
+        return StreamSupport.stream(new RangeSpliterator(0, rows), false);
+    }
+
+    /**
+     * Generates entities from index 0 to {@code rows - 1} into a list.
+     * @param rows the number of entities
+     * @return the list of entities
+     */
+    public List<ENTITY> list(int rows) {
+        List<ENTITY> list = new ArrayList<ENTITY>(rows);
+        for (int i = 0; i < rows; i++) {
+            list.add(generate(i));
+        }
+        return list;
+    }
+
+    private ColumnPlan[] plan() {
+        List<UniqueInfo> keys = new ArrayList<UniqueInfo>();
+        if (meta.hasPrimaryKey()) {
+            keys.add(meta.getPrimaryInfo().getUniqueInfo());
+        }
+        for (UniqueInfo unique : meta.getUniqueInfoList()) {
+            if (!unique.isPrimary() && !unique.isCompoundKey()) {
+                keys.add(unique);
+            }
+        }
+        Set<ColumnInfo> keyColumns = new HashSet<ColumnInfo>();
+        for (UniqueInfo key : keys) {
+            keyColumns.addAll(key.getUniqueColumnList());
+        }
+        // columns of a foreign key share the slot of the relation, so they refer to the same parent row
+        Map<ColumnInfo, Integer> foreignSlots = new HashMap<ColumnInfo, Integer>();
+        List<Long> slotRows = new ArrayList<Long>();
+        for (ForeignInfo foreign : meta.getForeignInfoList()) {
+            if (foreign.isReferrerAsOne() || !refersKey(foreign)) {
+                continue;
+            }
+            Long rows = foreignRowsMap.get(foreign.getForeignPropertyName());
+            int slot = slotRows.size();
+            slotRows.add(rows != null ? rows : DEFAULT_FOREIGN_ROWS);
+            for (ColumnInfo local : foreign.getLocalForeignColumnInfoMap().keySet()) {
+                if (!foreignSlots.containsKey(local)) {
+                    foreignSlots.put(local, slot);
+                }
+            }
+        }
+        Map<Integer, Long> slotDivisors = new HashMap<Integer, Long>();
+        for (UniqueInfo key : keys) {
+            // foreign keys in a key enumerate combinations of parent keys like digits of a number
+            long divisor = 1;
+            for (ColumnInfo column : key.getUniqueColumnList()) {
+                Integer slot = foreignSlots.get(column);
+                if (slot != null && !slotDivisors.containsKey(slot)) {
+                    slotDivisors.put(slot, divisor);
+                    divisor = multiplyCapped(divisor, slotRows.get(slot));
+                }
+            }
+        }
+        List<ColumnInfo> columns = meta.getColumnInfoList();
+        ColumnPlan[] plans = new ColumnPlan[columns.size()];
+        for (int i = 0; i < plans.length; i++) {
+            ColumnInfo column = columns.get(i);
+            Rule rule;
+            Integer slot = foreignSlots.get(column);
+            long foreignRows = slot != null ? slotRows.get(slot) : 0;
+            long divisor = 0;
+            if (slot != null && slotDivisors.containsKey(slot)) {
+                rule = Rule.FOREIGN_KEY_IN_KEY;
+                divisor = slotDivisors.get(slot);
+            } else if (slot != null) {
+                rule = Rule.FOREIGN_KEY;
+            } else if (keyColumns.contains(column)) {
+                rule = Rule.KEY;
+            } else if (column.getClassificationMeta() != null) {
+                rule = Rule.CLASSIFICATION;
+            } else {
+                rule = Rule.RANDOM;
+            }
+            plans[i] = new ColumnPlan(column, rule, kindOf(column.getObjectNativeType()), slot != null ? slot : -1,
+                    foreignRows, divisor, column.isNotNull() ? 0 : nullRatio);
+        }
+        return plans;
+    }
+
+    private static long multiplyCapped(long a, long b) {
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    private static boolean refersKey(ForeignInfo foreign) {
+        DBMeta foreignMeta = foreign.getForeignDBMeta();
+        if (!foreignMeta.hasPrimaryKey()) {
+            return false;
+        }
+        UniqueInfo primary = foreignMeta.getPrimaryInfo().getUniqueInfo();
+        for (ColumnInfo column : foreign.getLocalForeignColumnInfoMap().values()) {
+            if (!primary.containsColumn(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type == String.class) {
+            return Kind.STRING;
+        } else if (type == Integer.class) {
+            return Kind.INTEGER;
+        } else if (type == Long.class) {
+            return Kind.LONG;
+        } else if (type == Short.class) {
+            return Kind.SHORT;
+        } else if (type == Byte.class) {
+            return Kind.BYTE;
+        } else if (type == BigDecimal.class) {
+            return Kind.BIG_DECIMAL;
+        } else if (type == BigInteger.class) {
+            return Kind.BIG_INTEGER;
+        } else if (type == Double.class) {
+            return Kind.DOUBLE;
+        } else if (type == Float.class) {
+            return Kind.FLOAT;
+        } else if (type == Boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == LocalDate.class) {
+            return Kind.LOCAL_DATE;
+        } else if (type == LocalDateTime.class) {
+            return Kind.LOCAL_DATE_TIME;
+        } else if (type == LocalTime.class) {
+            return Kind.LOCAL_TIME;
+        } else if (type == Timestamp.class) {
+            return Kind.TIMESTAMP;
+        } else if (type == Time.class) {
+            return Kind.TIME;
+        } else if (type == java.util.Date.class || type == java.sql.Date.class) {
+            return Kind.DATE;
+        } else if (type == byte[].class) {
+            return Kind.BYTES;
+        } else if (type == UUID.class) {
+            return Kind.UUID;
+        }
+        return Kind.UNKNOWN;
+    }
+
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long bounded(long random, long bound) {
+        return (random >>> 1) % bound;
+    }
+
+    private static long powerOfTen(int exponent) {
+        long value = 1;
+        for (int i = 0; i < exponent && i < 18; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private class RangeSpliterator implements Spliterator<ENTITY> {
+        private long from;
+        private final long to;
+
+        RangeSpliterator(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ENTITY> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(generate(from++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<ENTITY> trySplit() {
+            long mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            RangeSpliterator prefix = new RangeSpliterator(from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    private static class ColumnPlan {
+        final ColumnInfo column;
+        final Rule rule;
+        final Kind kind;
+        final int slot;
+        final long foreignRows;
+        final long divisor;
+        final long nullThreshold;
+        final int size;
+        final int scale;
+        final Object[] codes;
+
+        ColumnPlan(ColumnInfo column, Rule rule, Kind kind, int slot, long foreignRows, long divisor, double nullRatio) {
+            this.column = column;
+            this.rule = rule;
+            this.kind = kind;
+            this.slot = slot;
+            this.foreignRows = foreignRows;
+            this.divisor = divisor;
+            this.nullThreshold = (long) (nullRatio * (1L << 20));
+            this.size = column.getColumnSize() != null && column.getColumnSize() > 0 ? column.getColumnSize() : 0;
+            this.scale = column.getDecimalDigits() != null ? column.getDecimalDigits() : 0;
+            this.codes = rule == Rule.CLASSIFICATION ? codesOf(column) : null;
+        }
+
+        private static Object[] codesOf(ColumnInfo column) {
+            ClassificationMeta classification = column.getClassificationMeta();
+            List<Classification> list = classification.listAll();
+            Object[] codes = new Object[list.size()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = column.convertToObjectNativeType(list.get(i).code());
+            }
+            return codes;
+        }
+
+        /**
+         * Returns the value of the column.
+         * @param index the index of row
+         * @param random the random value of the column
+         * @param row the random value of the row, shared by the columns of a foreign key
+         */
+        Object value(long index, long random, long row) {
+            switch (rule) {
+            case KEY:
+                return key(index + 1);
+            case FOREIGN_KEY:
+                return key(bounded(mix(row ^ mix(~slot)), foreignRows) + 1);
+            case FOREIGN_KEY_IN_KEY:
+                return key(index / divisor % foreignRows + 1);
+            case CLASSIFICATION:
+                return codes.length == 0 ? null : codes[(int) bounded(random, codes.length)];
+            default:
+                if (nullThreshold > 0 && (random & 0xfffff) < nullThreshold) {
+                    return null;
+                }
+                return random(mix(random));
+            }
+        }
+
+        private Object key(long number) {
+            switch (kind) {
+            case STRING:
+                return String.valueOf(number);
+            case INTEGER:
+                return (int) number;
+            case LONG:
+                return number;
+            case SHORT:
+                return (short) number;
+            case BYTE:
+                return (byte) number;
+            case BIG_DECIMAL:
+                return BigDecimal.valueOf(number);
+            case BIG_INTEGER:
+                return BigInteger.valueOf(number);
+            default:
+                return random(mix(number));
+            }
+        }
+
+        private Object random(long random) {
+            switch (kind) {
+            case STRING:
+                return string(random);
+            case INTEGER:
+                return (int) bounded(random, size > 0 && size < 10 ? powerOfTen(size) : Integer.MAX_VALUE);
+            case LONG:
+                return bounded(random, size > 0 && size < 19 ? powerOfTen(size) : Long.MAX_VALUE);
+            case SHORT:
+                return (short) bounded(random, Short.MAX_VALUE);
+            case BYTE:
+                return (byte) bounded(random, Byte.MAX_VALUE);
+            case BIG_DECIMAL:
+                return BigDecimal.valueOf(bounded(random, powerOfTen(size > 0 ? size : 9)), scale);
+            case BIG_INTEGER:
+                return BigInteger.valueOf(bounded(random, powerOfTen(size > 0 ? size : 9)));
+            case DOUBLE:
+                return (random >>> 11) * 0x1.0p-53 * 1000000d;
+            case FLOAT:
+                return (float) ((random >>> 40) * 0x1.0p-24 * 1000000f);
+            case BOOLEAN:
+                return (random & 1) == 1;
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(EPOCH_DAY_2000 + bounded(random, DAYS_RANGE));
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.of(LocalDate.ofEpochDay(EPOCH_DAY_2000 + bounded(random, DAYS_RANGE)),
+                        LocalTime.ofSecondOfDay(bounded(random >>> 20, 86400)));
+            case LOCAL_TIME:
+                return LocalTime.ofSecondOfDay(bounded(random, 86400));
+            case DATE:
+                return new java.util.Date(millis(random));
+            case TIMESTAMP:
+                return new Timestamp(millis(random));
+            case TIME:
+                return new Time(bounded(random, 86400) * 1000);
+            case BYTES:
+                return bytes(random);
+            case UUID:
+                return new UUID(random, mix(random));
+            default:
+                return null;
+            }
+        }
+
+        private long millis(long random) {
+            return (EPOCH_DAY_2000 + bounded(random, DAYS_RANGE)) * 86400000L + bounded(random >>> 20, 86400) * 1000;
+        }
+
+        private String string(long random) {
+            int length = size > 0 ? Math.min(size, DEFAULT_STRING_LENGTH) : DEFAULT_STRING_LENGTH;
+            char[] chars = new char[length];
+            long bits = random;
+            for (int i = 0; i < length; i++) {
+                if (i % 10 == 9) {
+                    bits = mix(bits);
+                }
+                chars[i] = ALPHANUMERIC[(int) ((bits >>> 1) % ALPHANUMERIC.length)];
+                bits >>>= 6;
+            }
+            return new String(chars);
+        }
+
+        private byte[] bytes(long random) {
+            int length = size > 0 ? Math.min(size, DEFAULT_STRING_LENGTH) : DEFAULT_STRING_LENGTH;
+            byte[] bytes = new byte[length];
+            long bits = random;
+            for (int i = 0; i < length; i++) {
+                if (i % 8 == 0) {
+                    bits = mix(bits + i);
+                }
+                bytes[i] = (byte) bits;
+                bits >>>= 8;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Creates a new generator.
+     * @param meta the DBMeta of the table
+     * @param entityType the type of entity of {@code meta}
+     * @param seed the seed of random values
+     * @return a new generator
+     * @throws IllegalArgumentException {@code entityType} is not the entity of {@code meta}
+     */
+    public static <ENTITY extends Entity> EntityGenerator<ENTITY> of(DBMeta meta, Class<ENTITY> entityType, long seed) {
+        if (!entityType.isAssignableFrom(meta.getEntityType())) {
+            throw new IllegalArgumentException(entityType.getName() + " is not the entity of " + meta.getTableDbName());
+        }
+        return new EntityGenerator<ENTITY>(meta, seed);
+    }
+}
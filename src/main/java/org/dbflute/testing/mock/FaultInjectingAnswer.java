@@ -0,0 +1,351 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.exception.SQLFailureException;
+import org.hamcrest.Matcher;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Answer for Behavior mocks that simulates database latency and failures on a {@link VirtualClock}.
+ *
+ * <p>
+ * Each call advances the clock of the calling thread by a latency sampled from the first matching rule:
+ * a ConditionBean rule ({@link Builder#latency(Matcher, Latency)}, evaluated by matchers like
+ * {@link org.dbflute.testing.DBFluteMatchers#cb(Class, Matcher)}), a table rule, or the default latency.
+ * Then faults are injected at the configured rates, and otherwise the delegate answer is returned.
+ * Nothing sleeps, so thousands of calls finish in milliseconds.
+ *
+ * <pre class="code"><code class="java">
+ * VirtualClock clock = VirtualClock.start();
+ * FaultInjectingAnswer answer = FaultInjectingAnswer.builder(clock)
+ *         .latency(Latency.fixed(Duration.ofMillis(2)))
+ *         .latency("PURCHASE", Latency.percentiles().at(50, Duration.ofMillis(5)).at(99, Duration.ofMillis(300)))
+ *         .latency(cb(MemberCB.class, hasCondition("memberName", likeSearch(...))), Latency.fixed(Duration.ofSeconds(1)))
+ *         .queryTimeout(Duration.ofMillis(500))
+ *         .fault(0.01, FaultInjectingAnswer.lockTimeout())
+ *         .fault(0.001, FaultInjectingAnswer.connectionLost())
+ *         .seed(42)
+ *         .build();
+ * MemberBhv bhv = mock(MemberBhv.class, answer);
+ * </code></pre>
+ *
+ * <p>
+ * Random values are derived from the seed and the call number, so a single-threaded run is reproducible.
+ * The table of a call is the name of the Behavior class without {@code Bhv}, compared ignoring case and underscores.
+ *
+ * @author taktos
+ *
+ */
+public class FaultInjectingAnswer implements Answer<Object> {
+
+    private final VirtualClock clock;
+    private final Latency defaultLatency;
+    private final List<Rule> rules;
+    private final Map<String, Latency> tableLatencies;
+    private final List<Fault> faults;
+    private final long queryTimeoutNanos;
+    private final Answer<?> delegate;
+    private final long seed;
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong faultCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private FaultInjectingAnswer(Builder builder) {
+        this.clock = builder.clock;
+        this.defaultLatency = builder.defaultLatency;
+        this.rules = new ArrayList<Rule>(builder.rules);
+        this.tableLatencies = new LinkedHashMap<String, Latency>(builder.tableLatencies);
+        this.faults = new ArrayList<Fault>(builder.faults);
+        this.queryTimeoutNanos = builder.queryTimeoutNanos;
+        this.delegate = builder.delegate;
+        this.seed = builder.seed;
+    }
+
+    /**
+     * Creates a new builder.
+     * @param clock the clock to advance
+     * @return the builder
+     */
+    public static Builder builder(VirtualClock clock) {
+        return new Builder(clock);
+    }
+
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+        long call = callCount.incrementAndGet();
+        long nanos = selectLatency(invocation).sampleNanos(random(call, 0));
+        if (queryTimeoutNanos > 0 && nanos > queryTimeoutNanos) {
+            clock.sleepNanos(queryTimeoutNanos);
+            timeoutCount.incrementAndGet();
+            throw new SQLFailureException("Simulated query timeout after " + Duration.ofNanos(queryTimeoutNanos),
+                    new SQLTimeoutException("Query timeout", "HYT00"));
+        }
+        clock.sleepNanos(nanos);
+        double random = random(call, 1);
+        double threshold = 0;
+        for (Fault fault : faults) {
+            threshold += fault.rate;
+            if (random < threshold) {
+                faultCount.incrementAndGet();
+                throw fault.exception.get();
+            }
+        }
+        return delegate.answer(invocation);
+    }
+
+    private Latency selectLatency(InvocationOnMock invocation) {
+        if (!rules.isEmpty()) {
+            Object argument = findCBArgument(invocation.getArguments());
+            if (argument != null) {
+                for (Rule rule : rules) {
+                    if (rule.matcher.matches(argument)) {
+                        return rule.latency;
+                    }
+                }
+            }
+        }
+        if (!tableLatencies.isEmpty()) {
+            Latency latency = tableLatencies.get(tableOf(invocation.getMock().getClass()));
+            if (latency != null) {
+                return latency;
+            }
+        }
+        return defaultLatency;
+    }
+
+    private double random(long call, long stream) {
+        // SplitMix64
+        long z = seed + call * 0x9e3779b97f4a7c15L + stream * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    private static Object findCBArgument(Object[] arguments) {
+        for (Object argument : arguments) {
+            if (argument instanceof CBCall) {
+                return argument;
+            }
+        }
+        return null;
+    }
+
+    private static String tableOf(Class<?> behaviorType) {
+        for (Class<?> type = behaviorType; type != null; type = type.getSuperclass()) {
+            String name = type.getSimpleName();
+            if (name.endsWith("Bhv") && !name.startsWith("Bs")) {
+                return normalize(name.substring(0, name.length() - 3));
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(String table) {
+        return table.replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the number of calls answered, including failed calls.
+     * @return the number of calls
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * Returns the number of injected faults, not including query timeouts.
+     * @return the number of faults
+     */
+    public long getFaultCount() {
+        return faultCount.get();
+    }
+
+    /**
+     * Returns the number of calls that exceeded the query timeout.
+     * @return the number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Creates an exception of lock wait timeout.
+     * @return the supplier of exception
+     */
+    public static Supplier<RuntimeException> lockTimeout() {
+        return new Supplier<RuntimeException>() {
+            @Override
+            public RuntimeException get() {
+                return new SQLFailureException("Simulated lock wait timeout",
+                        new SQLTransientException("Lock wait timeout exceeded", "40001"));
+            }
+        };
+    }
+
+    /**
+     * Creates an exception of lost connection.
+     * @return the supplier of exception
+     */
+    public static Supplier<RuntimeException> connectionLost() {
+        return new Supplier<RuntimeException>() {
+            @Override
+            public RuntimeException get() {
+                return new SQLFailureException("Simulated connection loss",
+                        new SQLNonTransientConnectionException("Connection is closed", "08006"));
+            }
+        };
+    }
+
+    private static class Rule {
+        final Matcher<?> matcher;
+        final Latency latency;
+
+        Rule(Matcher<?> matcher, Latency latency) {
+            this.matcher = matcher;
+            this.latency = latency;
+        }
+    }
+
+    private static class Fault {
+        final double rate;
+        final Supplier<? extends RuntimeException> exception;
+
+        Fault(double rate, Supplier<? extends RuntimeException> exception) {
+            this.rate = rate;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Builder of {@link FaultInjectingAnswer}.
+     */
+    public static class Builder {
+        private final VirtualClock clock;
+        private Latency defaultLatency = Latency.fixed(Duration.ZERO);
+        private final List<Rule> rules = new ArrayList<Rule>();
+        private final Map<String, Latency> tableLatencies = new LinkedHashMap<String, Latency>();
+        private final List<Fault> faults = new ArrayList<Fault>();
+        private long queryTimeoutNanos;
+        private Answer<?> delegate = Mockito.RETURNS_DEFAULTS;
+        private long seed;
+
+        private Builder(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        /**
+         * Sets the latency of calls that match no other rule. The default is zero.
+         * @param latency the latency
+         * @return this builder
+         */
+        public Builder latency(Latency latency) {
+            this.defaultLatency = latency;
+            return this;
+        }
+
+        /**
+         * Sets the latency of calls to the Behavior of {@code table}.
+         * @param table the table name, e.g. "MEMBER_STATUS" or "MemberStatus"
+         * @param latency the latency
+         * @return this builder
+         */
+        public Builder latency(String table, Latency latency) {
+            tableLatencies.put(normalize(table), latency);
+            return this;
+        }
+
+        /**
+         * Adds the latency of calls whose lambda argument matches {@code cbCallMatcher}.
+         * Rules are evaluated in added order, before table rules.
+         * @param cbCallMatcher the matcher that evaluates lambda argument, e.g. {@code cb(MemberCB.class, ...)}
+         * @param latency the latency
+         * @return this builder
+         */
+        public Builder latency(Matcher<?> cbCallMatcher, Latency latency) {
+            rules.add(new Rule(cbCallMatcher, latency));
+            return this;
+        }
+
+        /**
+         * Adds a fault injected at {@code rate} of calls. Rates of all faults are summed up.
+         * @param rate the rate in [0, 1]
+         * @param exception the supplier of exception to throw
+         * @return this builder
+         */
+        public Builder fault(double rate, Supplier<? extends RuntimeException> exception) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Rate must be in [0, 1]: " + rate);
+            }
+            faults.add(new Fault(rate, exception));
+            return this;
+        }
+
+        /**
+         * Sets the query timeout. A call whose latency exceeds it takes the timeout and throws.
+         * @param timeout the query timeout
+         * @return this builder
+         */
+        public Builder queryTimeout(Duration timeout) {
+            this.queryTimeoutNanos = timeout.toNanos();
+            return this;
+        }
+
+        /**
+         * Sets the answer of calls without fault. The default returns default values.
+         * @param delegate the answer
+         * @return this builder
+         */
+        public Builder then(Answer<?> delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Sets the seed of random values.
+         * @param seed the seed
+         * @return this builder
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FaultInjectingAnswer build() {
+            return new FaultInjectingAnswer(this);
+        }
+    }
+}
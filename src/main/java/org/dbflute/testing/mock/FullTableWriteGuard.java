@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.testing.matcher.HasSelectiveWhereClause;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Answer for Behavior mocks that fails query updates and deletes which would affect the whole table.
+ *
+ * <p>
+ * Every call of {@code queryUpdate}, {@code queryDelete}, {@code varyingQueryUpdate} and {@code varyingQueryDelete}
+ * is checked before the delegate answer: the lambda argument is replayed on a new ConditionBean, and the call fails
+ * with {@link AssertionError} if it does not match {@link HasSelectiveWhereClause}, that is,
+ * the where clause is empty or narrows rows only by columns that are neither a key nor a foreign key.
+ * Other calls are passed to the delegate as they are.
+ *
+ * <pre class="code"><code class="java">
+ * MemberBhv bhv = mock(MemberBhv.class, FullTableWriteGuard.guard());
+ *
+ * // with recording
+ * BehaviorRecorder recorder = new BehaviorRecorder();
+ * MemberBhv bhv = mock(MemberBhv.class, FullTableWriteGuard.guard(recorder));
+ * </code></pre>
+ *
+ * <p>
+ * The ConditionBean class is the return type of {@code newConditionBean()} of the Behavior
+ * (see {@link ConditionBeanFactory#ofBehavior(Class)}).
+ * Use {@link #guard(ConditionBeanFactory, Answer)} for Behaviors that do not declare it.
+ *
+ * @author taktos
+ *
+ */
+public class FullTableWriteGuard implements Answer<Object> {
+
+    private static final Set<String> GUARDED_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("queryUpdate", "queryDelete", "varyingQueryUpdate", "varyingQueryDelete")));
+
+    private final ConditionBeanFactory<?> factory;
+    private final Answer<?> delegate;
+    private final Matcher<ConditionBean> matcher = HasSelectiveWhereClause.hasSelectiveWhereClause();
+
+    private FullTableWriteGuard(ConditionBeanFactory<?> factory, Answer<?> delegate) {
+        this.factory = factory;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Creates a guard that returns default values.
+     * @return the answer
+     */
+    public static FullTableWriteGuard guard() {
+        return guard(Mockito.RETURNS_DEFAULTS);
+    }
+
+    /**
+     * Creates a guard that delegates calls to {@code delegate}, such as {@link BehaviorRecorder}.
+     * @param delegate the answer of calls
+     * @return the answer
+     */
+    public static FullTableWriteGuard guard(Answer<?> delegate) {
+        return new FullTableWriteGuard(null, delegate);
+    }
+
+    /**
+     * Creates a guard that replays lambda arguments on ConditionBeans created by {@code factory}.
+     * @param factory the factory of ConditionBean
+     * @param delegate the answer of calls
+     * @return the answer
+     */
+    public static FullTableWriteGuard guard(ConditionBeanFactory<?> factory, Answer<?> delegate) {
+        return new FullTableWriteGuard(factory, delegate);
+    }
+
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+        if (GUARDED_METHODS.contains(invocation.getMethod().getName())) {
+            check(invocation);
+        }
+        return delegate.answer(invocation);
+    }
+
+    private void check(InvocationOnMock invocation) {
+        for (Object argument : invocation.getArguments()) {
+            if (argument instanceof ConditionBean) {
+                check(invocation, (ConditionBean) argument);
+                return;
+            }
+            if (argument instanceof CBCall) {
+                replay(invocation, getFactory(invocation.getMock().getClass()), (CBCall<?>) argument);
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <CB extends ConditionBean> void replay(InvocationOnMock invocation, ConditionBeanFactory<CB> cbFactory,
+            CBCall<?> call) {
+        CB cb = cbFactory.replay((CBCall<CB>) call);
+        try {
+            check(invocation, cb);
+        } finally {
+            cbFactory.release(cb);
+        }
+    }
+
+    private void check(InvocationOnMock invocation, ConditionBean cb) {
+        if (matcher.matches(cb)) {
+            return;
+        }
+        StringDescription description = new StringDescription();
+        description.appendText(invocation.getMethod().getName() + " of " + cb.asTableDbName() + " expected ");
+        description.appendDescriptionOf(matcher).appendText(" but ");
+        matcher.describeMismatch(cb, description);
+        throw new AssertionError(description.toString());
+    }
+
+    private ConditionBeanFactory<?> getFactory(Class<?> behaviorType) {
+        return factory != null ? factory : ConditionBeanFactory.ofBehavior(behaviorType);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Distribution of simulated database latency.
+ *
+ * <p>
+ * A latency is sampled from a uniform random value in [0, 1), so the same value gives the same latency.
+ * <pre class="code"><code class="java">
+ * Latency.fixed(Duration.ofMillis(3));
+ * Latency.uniform(Duration.ofMillis(1), Duration.ofMillis(10));
+ * Latency.percentiles().at(50, Duration.ofMillis(4)).at(99, Duration.ofMillis(120)).at(100, Duration.ofSeconds(2));
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public abstract class Latency {
+
+    /**
+     * Samples a latency.
+     * @param random the uniform random value in [0, 1)
+     * @return the latency in nanoseconds
+     */
+    public abstract long sampleNanos(double random);
+
+    /**
+     * Creates a latency that is always {@code duration}.
+     * @param duration the latency
+     * @return the latency
+     */
+    public static Latency fixed(Duration duration) {
+        final long nanos = duration.toNanos();
+        return new Latency() {
+            @Override
+            public long sampleNanos(double random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed " + Duration.ofNanos(nanos);
+            }
+        };
+    }
+
+    /**
+     * Creates a latency uniformly distributed between {@code min} and {@code max}.
+     * @param min the minimum latency
+     * @param max the maximum latency
+     * @return the latency
+     */
+    public static Latency uniform(Duration min, Duration max) {
+        return percentiles().at(0, min).at(100, max);
+    }
+
+    /**
+     * Creates an empty percentile-based latency. Add points by {@link Percentiles#at(double, Duration)}.
+     * @return the latency
+     */
+    public static Percentiles percentiles() {
+        return new Percentiles(new TreeMap<Double, Long>());
+    }
+
+    /**
+     * Latency given by percentile points, interpolated linearly between points.
+     * Below the first point, latency is interpolated from zero.
+     */
+    public static class Percentiles extends Latency {
+        private final TreeMap<Double, Long> points;
+
+        private Percentiles(TreeMap<Double, Long> points) {
+            this.points = points;
+        }
+
+        /**
+         * Returns a new latency with the point added.
+         * @param percentile the percentile in [0, 100]
+         * @param duration the latency at {@code percentile}
+         * @return the new latency
+         */
+        public Percentiles at(double percentile, Duration duration) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be in [0, 100]: " + percentile);
+            }
+            TreeMap<Double, Long> copy = new TreeMap<Double, Long>(points);
+            copy.put(percentile / 100, duration.toNanos());
+            return new Percentiles(copy);
+        }
+
+        @Override
+        public long sampleNanos(double random) {
+            if (points.isEmpty()) {
+                throw new IllegalStateException("No percentile point is specified.");
+            }
+            Map.Entry<Double, Long> upper = points.ceilingEntry(random);
+            if (upper == null) {
+                return points.lastEntry().getValue();
+            }
+            Map.Entry<Double, Long> lower = points.lowerEntry(random);
+            double lowerKey = lower == null ? 0 : lower.getKey();
+            long lowerValue = lower == null ? 0 : lower.getValue();
+            if (upper.getKey() == lowerKey) {
+                return upper.getValue();
+            }
+            double ratio = (random - lowerKey) / (upper.getKey() - lowerKey);
+            return lowerValue + (long) ((upper.getValue() - lowerValue) * ratio);
+        }
+
+        @Override
+        public String toString() {
+            return "percentiles " + points;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.dbflute.bhv.readable.CBCall;
+import org.dbflute.cbean.ConditionBean;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+
+/**
+ * Verifies that a Behavior method was called with a ConditionBean matching all given matchers,
+ * and reports only the nearest calls on failure.
+ *
+ * <p>
+ * Mockito's {@code verify(bhv).selectList(argCB(...))} prints every invocation of the mock on failure,
+ * which is slow and unreadable when the mock received thousands of calls.
+ * This verifier scores each call by the number of matchers its ConditionBean satisfies,
+ * and reports the top calls with the description of the failed matchers only.
+ *
+ * <pre class="code"><code class="java">
+ * NearestMatchVerifier.of(MemberCB.class,
+ *         hasCondition("memberStatusCode", equal("FML")),
+ *         hasCondition("birthdate", lessThan(date)),
+ *         orderedBy("MEMBER_ID")).verify(mockBhv, "selectList");
+ * </code></pre>
+ *
+ * <p>
+ * Calls are scored on the common fork-join pool, and scoring stops as soon as any call matches all.
+ * At most {@link #limit(int)} latest calls are scored. Mismatch descriptions are built only for reported calls.
+ * The matchers are called from multiple threads, so they must not keep state.
+ *
+ * @param <CB> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class NearestMatchVerifier<CB extends ConditionBean> {
+
+    private static final int THRESHOLD = 64;
+
+    private final ConditionBeanFactory<CB> factory;
+    private final List<Matcher<? super CB>> matchers;
+    private int top = 5;
+    private int limit = 100000;
+
+    private NearestMatchVerifier(ConditionBeanFactory<CB> factory, List<Matcher<? super CB>> matchers) {
+        if (matchers.isEmpty()) {
+            throw new IllegalArgumentException("No matcher is specified.");
+        }
+        this.factory = factory;
+        this.matchers = matchers;
+    }
+
+    /**
+     * Creates a new verifier.
+     * @param clazz the class of ConditionBean implementation
+     * @param matchers the matchers that the ConditionBean should satisfy
+     * @param <CB> the type of ConditionBean
+     * @return the verifier
+     */
+    @SafeVarargs
+    public static <CB extends ConditionBean> NearestMatchVerifier<CB> of(Class<CB> clazz, Matcher<? super CB>... matchers) {
+        List<Matcher<? super CB>> list = new ArrayList<Matcher<? super CB>>(matchers.length);
+        for (Matcher<? super CB> matcher : matchers) {
+            list.add(matcher);
+        }
+        return new NearestMatchVerifier<CB>(ConditionBeanFactory.of(clazz), list);
+    }
+
+    /**
+     * Creates a new verifier.
+     * @param factory the factory of ConditionBean implementation
+     * @param matchers the matchers that the ConditionBean should satisfy
+     * @param <CB> the type of ConditionBean
+     * @return the verifier
+     */
+    @SafeVarargs
+    public static <CB extends ConditionBean> NearestMatchVerifier<CB> of(ConditionBeanFactory<CB> factory,
+            Matcher<? super CB>... matchers) {
+        // copied element by element, so that the varargs array does not escape
+        List<Matcher<? super CB>> list = new ArrayList<Matcher<? super CB>>(matchers.length);
+        for (Matcher<? super CB> matcher : matchers) {
+            list.add(matcher);
+        }
+        return new NearestMatchVerifier<CB>(factory, list);
+    }
+
+    /**
+     * Sets the number of calls to report. The default is 5.
+     * @param top the number of calls
+     * @return this verifier
+     */
+    public NearestMatchVerifier<CB> top(int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("top must be positive: " + top);
+        }
+        this.top = top;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of latest calls to score. The default is 100000.
+     * @param limit the maximum number of calls
+     * @return this verifier
+     */
+    public NearestMatchVerifier<CB> limit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Verifies that {@code methodName} of the Mockito mock was called with a matching ConditionBean.
+     * Invocations are read from {@link Mockito#mockingDetails(Object)} and not marked as verified.
+     * @param mock the Mockito mock of Behavior
+     * @param methodName the name of Behavior method, e.g. "selectList"
+     * @throws AssertionError no call matched
+     */
+    public void verify(Object mock, String methodName) {
+        if (mock instanceof BehaviorRecorder) {
+            verify((BehaviorRecorder) mock, methodName);
+            return;
+        }
+        if (!Mockito.mockingDetails(mock).isMock()) {
+            throw new IllegalArgumentException("Not a mock: " + mock);
+        }
+        List<Object> arguments = new ArrayList<Object>();
+        List<String> labels = new ArrayList<String>();
+        int index = 0;
+        for (Invocation invocation : Mockito.mockingDetails(mock).getInvocations()) {
+            if (!invocation.getMethod().getName().equals(methodName)) {
+                continue;
+            }
+            Object argument = findCBArgument(invocation.getArguments());
+            if (argument != null) {
+                arguments.add(argument);
+                labels.add("#" + index);
+            }
+            index++;
+        }
+        verify(methodName, arguments, labels);
+    }
+
+    /**
+     * Verifies that {@code methodName} was recorded with a matching ConditionBean.
+     * Calls materialized into structures or reduced to fingerprints cannot be evaluated and are ignored.
+     * @param recorder the recorder
+     * @param methodName the name of Behavior method, e.g. "selectList"
+     * @throws AssertionError no call matched
+     */
+    public void verify(BehaviorRecorder recorder, String methodName) {
+        List<Object> arguments = new ArrayList<Object>();
+        List<String> labels = new ArrayList<String>();
+        for (BehaviorCall call : recorder.getCalls(methodName)) {
+            Object argument = call.getCBArgument();
+            if (argument instanceof CBCall) {
+                arguments.add(argument);
+                labels.add("seq " + call.getSequence());
+            }
+        }
+        verify(methodName, arguments, labels);
+    }
+
+    /**
+     * Verifies that any ConditionBean captured by {@code captor} matches.
+     * @param captor the captor
+     * @throws AssertionError no call matched
+     */
+    public void verify(BehaviorArgumentCaptor<CB> captor) {
+        List<Object> arguments = new ArrayList<Object>();
+        List<String> labels = new ArrayList<String>();
+        List<CBCall<CB>> calls = captor.getAllCalls();
+        for (int i = 0; i < calls.size(); i++) {
+            arguments.add(calls.get(i));
+            labels.add("#" + i);
+        }
+        verify("captured", arguments, labels);
+    }
+
+    private void verify(String methodName, List<Object> arguments, List<String> labels) {
+        int skipped = Math.max(0, arguments.size() - limit);
+        List<Object> scored = arguments.subList(skipped, arguments.size());
+        AtomicBoolean found = new AtomicBoolean();
+        List<Score> nearest = ForkJoinPool.commonPool().invoke(new Scoring(scored, found, 0, scored.size()));
+        if (found.get()) {
+            return;
+        }
+        StringDescription description = new StringDescription();
+        description.appendText(methodName + " was called " + arguments.size() + " time(s) but none matched all of:");
+        for (int i = 0; i < matchers.size(); i++) {
+            description.appendText("\n    [" + i + "] ").appendDescriptionOf(matchers.get(i));
+        }
+        if (nearest.isEmpty()) {
+            throw new AssertionError(description.toString());
+        }
+        description.appendText("\nNearest " + nearest.size() + " call(s):");
+        for (Score score : nearest) {
+            description.appendText("\n    " + labels.get(skipped + score.index) + " (" + score.matched + "/" + matchers.size() + ")");
+            describeFailures(scored.get(score.index), score, description);
+        }
+        if (skipped > 0) {
+            description.appendText("\n(" + skipped + " older call(s) were not scored)");
+        }
+        throw new AssertionError(description.toString());
+    }
+
+    private void describeFailures(Object argument, Score score, Description description) {
+        if (score.error != null) {
+            description.appendText(": threw " + score.error);
+            return;
+        }
+        CB cb = prepare(argument);
+        try {
+            for (int i = 0; i < matchers.size(); i++) {
+                if (!score.passed[i]) {
+                    description.appendText("\n        [" + i + "] ");
+                    matchers.get(i).describeMismatch(cb, description);
+                }
+            }
+        } finally {
+            release(argument, cb);
+        }
+    }
+
+    /**
+     * Scores a call. An exception thrown by the lambda argument makes the call a candidate that threw,
+     * but an exception thrown by a matcher is a configuration error, e.g. an unknown column, and propagates.
+     */
+    private Score score(Object argument, int index) {
+        boolean[] passed = new boolean[matchers.size()];
+        CB cb;
+        try {
+            cb = prepare(argument);
+        } catch (RuntimeException e) {
+            return new Score(index, 0, passed, e);
+        }
+        try {
+            int matched = 0;
+            for (int i = 0; i < passed.length; i++) {
+                passed[i] = matchers.get(i).matches(cb);
+                if (passed[i]) {
+                    matched++;
+                }
+            }
+            return new Score(index, matched, passed, null);
+        } finally {
+            release(argument, cb);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private CB prepare(Object argument) {
+        if (argument instanceof ConditionBean) {
+            return (CB) argument;
+        }
+        return factory.replay((CBCall<CB>) argument);
+    }
+
+    private void release(Object argument, CB cb) {
+        if (argument instanceof CBCall) {
+            factory.release(cb);
+        }
+    }
+
+    private static Object findCBArgument(Object[] arguments) {
+        for (Object argument : arguments) {
+            if (argument instanceof CBCall || argument instanceof ConditionBean) {
+                return argument;
+            }
+        }
+        return null;
+    }
+
+    private List<Score> merge(List<Score> left, List<Score> right) {
+        List<Score> merged = new ArrayList<Score>(left.size() + right.size());
+        merged.addAll(left);
+        merged.addAll(right);
+        Collections.sort(merged, Score.NEAREST_FIRST);
+        return merged.size() > top ? new ArrayList<Score>(merged.subList(0, top)) : merged;
+    }
+
+    private static class Score {
+        static final Comparator<Score> NEAREST_FIRST = new Comparator<Score>() {
+            @Override
+            public int compare(Score o1, Score o2) {
+                if (o1.matched != o2.matched) {
+                    return o1.matched > o2.matched ? -1 : 1;
+                }
+                return Integer.compare(o1.index, o2.index);
+            }
+        };
+
+        final int index;
+        final int matched;
+        final boolean[] passed;
+        final RuntimeException error;
+
+        Score(int index, int matched, boolean[] passed, RuntimeException error) {
+            this.index = index;
+            this.matched = matched;
+            this.passed = passed;
+            this.error = error;
+        }
+    }
+
+    private class Scoring extends RecursiveTask<List<Score>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Object> arguments;
+        private final AtomicBoolean found;
+        private final int from;
+        private final int to;
+
+        Scoring(List<Object> arguments, AtomicBoolean found, int from, int to) {
+            this.arguments = arguments;
+            this.found = found;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Score> compute() {
+            if (to - from <= THRESHOLD) {
+                List<Score> scores = new ArrayList<Score>();
+                for (int i = from; i < to && !found.get(); i++) {
+                    Score score = score(arguments.get(i), i);
+                    if (score.error == null && score.matched == matchers.size()) {
+                        found.set(true);
+                        return Collections.emptyList();
+                    }
+                    scores.add(score);
+                }
+                return merge(scores, Collections.<Score> emptyList());
+            }
+            int mid = (from + to) >>> 1;
+            Scoring left = new Scoring(arguments, found, from, mid);
+            Scoring right = new Scoring(arguments, found, mid, to);
+            invokeAll(left, right);
+            return merge(left.join(), right.join());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.mock;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clock that advances only when simulated work is done, without sleeping.
+ *
+ * <p>
+ * Each thread has its own timeline. {@link #sleep(Duration)} moves the timeline of the calling thread,
+ * so calls running on different threads overlap as they would in real time,
+ * and {@link #getMakespan()} is the time the slowest thread took.
+ * Pass this clock to the code under test to let it observe the simulated time.
+ *
+ * <p>
+ * The timeline of a thread starts at 0 when the thread first uses the clock.
+ * Wrap tasks by {@link #wrap(Runnable)} or {@link #wrap(Callable)} before submitting them,
+ * so that each task starts at the time of the submitting thread (or later, if its worker is still busy).
+ *
+ * <pre class="code"><code class="java">
+ * VirtualClock clock = VirtualClock.of(Instant.parse("2015-04-01T00:00:00Z"));
+ * service.fanOut(clock, executor, mockBhv);   // submits clock.wrap(task), each call sleeps virtually
+ * clock.awaitAll();                          // the caller waited for all workers
+ * assertThat(clock.getElapsed(), lessThan(Duration.ofMillis(200)));
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class VirtualClock extends Clock {
+
+    private final State state;
+    private final ZoneId zone;
+
+    private static class State {
+        final Instant start;
+        final ConcurrentMap<Long, AtomicLong> timelines = new ConcurrentHashMap<Long, AtomicLong>();
+        final LongAdder total = new LongAdder();
+
+        State(Instant start) {
+            this.start = start;
+        }
+
+        AtomicLong timeline() {
+            long id = Thread.currentThread().getId();
+            AtomicLong timeline = timelines.get(id);
+            if (timeline == null) {
+                timeline = new AtomicLong();
+                AtomicLong existing = timelines.putIfAbsent(id, timeline);
+                if (existing != null) {
+                    timeline = existing;
+                }
+            }
+            return timeline;
+        }
+
+        void advanceTo(long nanos) {
+            AtomicLong timeline = timeline();
+            long current;
+            do {
+                current = timeline.get();
+            } while (current < nanos && !timeline.compareAndSet(current, nanos));
+        }
+
+        long makespan() {
+            long max = 0;
+            for (AtomicLong timeline : timelines.values()) {
+                max = Math.max(max, timeline.get());
+            }
+            return max;
+        }
+    }
+
+    private VirtualClock(State state, ZoneId zone) {
+        this.state = state;
+        this.zone = zone;
+    }
+
+    /**
+     * Creates a new clock that starts at {@code start} in UTC.
+     * @param start the start instant of all timelines
+     * @return the clock
+     */
+    public static VirtualClock of(Instant start) {
+        return new VirtualClock(new State(start), ZoneOffset.UTC);
+    }
+
+    /**
+     * Creates a new clock that starts at the current time in UTC.
+     * @return the clock
+     */
+    public static VirtualClock start() {
+        return of(Instant.now());
+    }
+
+    /**
+     * Advances the timeline of the calling thread without blocking.
+     * @param duration the simulated duration
+     */
+    public void sleep(Duration duration) {
+        sleepNanos(duration.toNanos());
+    }
+
+    /**
+     * Advances the timeline of the calling thread without blocking.
+     * @param nanos the simulated duration in nanoseconds
+     */
+    public void sleepNanos(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Negative duration: " + nanos);
+        }
+        state.timeline().addAndGet(nanos);
+        state.total.add(nanos);
+    }
+
+    /**
+     * Moves the timeline of the calling thread to the latest timeline of all threads,
+     * as if the thread waited for all other threads.
+     */
+    public void awaitAll() {
+        state.advanceTo(state.makespan());
+    }
+
+    /**
+     * Returns a task that runs {@code task} on the timeline of the calling thread at this moment.
+     * When the task starts, the timeline of the executing thread is moved forward to that time.
+     * @param task the task to submit to an executor
+     * @return the wrapped task
+     */
+    public Runnable wrap(final Runnable task) {
+        final long forked = state.timeline().get();
+        return new Runnable() {
+            @Override
+            public void run() {
+                state.advanceTo(forked);
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Returns a task that runs {@code task} on the timeline of the calling thread at this moment.
+     * When the task starts, the timeline of the executing thread is moved forward to that time.
+     * @param task the task to submit to an executor
+     * @param <V> the type of result
+     * @return the wrapped task
+     */
+    public <V> Callable<V> wrap(final Callable<V> task) {
+        final long forked = state.timeline().get();
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                state.advanceTo(forked);
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * Returns the elapsed time of the calling thread.
+     * @return the elapsed time
+     */
+    public Duration getElapsed() {
+        return Duration.ofNanos(state.timeline().get());
+    }
+
+    /**
+     * Returns the elapsed time of the slowest thread.
+     * @return the makespan
+     */
+    public Duration getMakespan() {
+        return Duration.ofNanos(state.makespan());
+    }
+
+    /**
+     * Returns the sum of simulated time of all threads.
+     * @return the total time
+     */
+    public Duration getTotal() {
+        return Duration.ofNanos(state.total.sum());
+    }
+
+    /**
+     * Resets all timelines to the start instant.
+     */
+    public void reset() {
+        state.timelines.clear();
+        state.total.reset();
+    }
+
+    @Override
+    public Instant instant() {
+        return state.start.plusNanos(state.timeline().get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Returns a clock with {@code zone}, sharing the timelines with this clock.
+     */
+    @Override
+    public VirtualClock withZone(ZoneId zone) {
+        return new VirtualClock(state, zone);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.replay;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.cbean.sqlclause.SqlClause;
+import org.dbflute.helper.beans.DfBeanDesc;
+import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.dbflute.util.DfReflectionUtil;
+
+/**
+ * Structural form of a ConditionBean: table, conditions, relations, specified columns, ordering and paging.
+ *
+ * <p>
+ * Conditions are kept as the where clause with parameter comments, not with bound values,
+ * so ConditionBeans that differ only in parameter values have the same structure.
+ * The fingerprint of {@link ConditionBean#toDisplaySql()} is kept as well, to compare values if needed.
+ *
+ * <p>
+ * A structure is serialized as a line of tab-separated fields by {@link #toLine()}.
+ *
+ * @author taktos
+ *
+ */
+public class CBStructure {
+
+    private static final String[] FIELD_NAMES = { "table", "where", "relations", "specified", "orderBy", "paging" };
+    private static final String NONE = "-";
+
+    private final String[] fields;
+    private final long valueFingerprint;
+
+    private CBStructure(String[] fields, long valueFingerprint) {
+        this.fields = fields;
+        this.valueFingerprint = valueFingerprint;
+    }
+
+    /**
+     * Extracts the structure of {@code cb}.
+     * @param cb the ConditionBean
+     * @return the structure
+     * @throws IllegalStateException the version of dbflute-runtime is not supported
+     */
+    public static CBStructure of(ConditionBean cb) {
+        SqlClause sqlClause = cb.getSqlClause();
+        String[] fields = new String[FIELD_NAMES.length];
+        fields[0] = cb.asTableDbName();
+        fields[1] = normalize(sqlClause.getWhereClause());
+        fields[2] = relations(sqlClause);
+        fields[3] = specified(sqlClause);
+        fields[4] = normalize(sqlClause.getOrderByClause());
+        fields[5] = sqlClause.isFetchScopeEffective() ? sqlClause.getFetchSize() + "/" + sqlClause.getFetchPageNumber() : NONE;
+        return new CBStructure(fields, fingerprint(cb.toDisplaySql()));
+    }
+
+    /**
+     * Parses a line written by {@link #toLine()}.
+     * @param line the line
+     * @return the structure
+     * @throws IllegalArgumentException the line is malformed
+     */
+    public static CBStructure parse(String line) {
+        String[] tokens = line.split("\t", -1);
+        if (tokens.length != FIELD_NAMES.length + 1) {
+            throw new IllegalArgumentException("Malformed structure: " + line);
+        }
+        String[] fields = new String[FIELD_NAMES.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = unescape(tokens[i]);
+        }
+        try {
+            return new CBStructure(fields, Long.parseUnsignedLong(tokens[fields.length], 16));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed structure: " + line, e);
+        }
+    }
+
+    /**
+     * Serializes this structure to a line without line separator.
+     * @return the line
+     */
+    public String toLine() {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            escape(field, sb);
+            sb.append('\t');
+        }
+        sb.append(Long.toHexString(valueFingerprint));
+        return sb.toString();
+    }
+
+    /**
+     * Returns the names of fields different from {@code other}, with both values.
+     * @param other the structure to compare
+     * @return the list of differences, empty if the same structure
+     */
+    public List<String> diff(CBStructure other) {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].equals(other.fields[i])) {
+                list.add(FIELD_NAMES[i] + ": expected <" + other.fields[i] + "> but was <" + fields[i] + ">");
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns whether {@code other} has the same parameter values as well as the same structure.
+     * @param other the structure to compare
+     * @return {@code true} if the same
+     */
+    public boolean equalsWithValues(CBStructure other) {
+        return equals(other) && valueFingerprint == other.valueFingerprint;
+    }
+
+    public String getTable() {
+        return fields[0];
+    }
+
+    public long getValueFingerprint() {
+        return valueFingerprint;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CBStructure && Arrays.equals(fields, ((CBStructure) obj).fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(fields);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < fields.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(FIELD_NAMES[i]).append('=').append(fields[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String normalize(String clause) {
+        if (clause == null) {
+            return NONE;
+        }
+        String normalized = clause.trim().replaceAll("\\s+", " ");
+        return normalized.isEmpty() ? NONE : normalized;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String relations(SqlClause sqlClause) {
+        if (sqlClause.isSelectedRelationEmpty()) {
+            return NONE;
+        }
+        Method method = DfReflectionUtil.getAccessibleMethod(sqlClause.getClass(), "getSelectedRelationBasicMap", null);
+        if (method == null) {
+            throw new IllegalStateException("Not supported version of dbflute-runtime.");
+        }
+        Map<String, String> basicMap = (Map<String, String>) DfReflectionUtil.invokeForcedly(method, sqlClause, null);
+        TreeSet<String> set = new TreeSet<String>();
+        for (Map.Entry<String, String> entry : basicMap.entrySet()) {
+            set.add(entry.getKey() + ":" + entry.getValue());
+        }
+        return join(set);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String specified(SqlClause sqlClause) {
+        DfBeanDesc beanDesc = DfBeanDescFactory.getBeanDesc(sqlClause.getClass());
+        if (!beanDesc.hasField("_specifiedSelectColumnMap")) {
+            throw new IllegalStateException("Not supported version of dbflute-runtime.");
+        }
+        Field field = beanDesc.getField("_specifiedSelectColumnMap");
+        field.setAccessible(true);
+        Map<String, Map<String, ?>> specifyMap;
+        try {
+            specifyMap = (Map<String, Map<String, ?>>) field.get(sqlClause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Not supported version of dbflute-runtime.", e);
+        }
+        if (specifyMap == null || specifyMap.isEmpty()) {
+            return NONE;
+        }
+        TreeSet<String> set = new TreeSet<String>();
+        for (Map.Entry<String, Map<String, ?>> entry : specifyMap.entrySet()) {
+            for (String column : entry.getValue().keySet()) {
+                set.add(entry.getKey() + "." + column);
+            }
+        }
+        return join(set);
+    }
+
+    private static String join(Iterable<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(sb.length() == 0 ? "" : ",").append(value);
+        }
+        return sb.length() == 0 ? NONE : sb.toString();
+    }
+
+    /**
+     * Returns the fingerprint of {@code sql}, the 64-bit FNV-1a hash of its characters.
+     * @param sql the display SQL of ConditionBean
+     * @return the fingerprint
+     */
+    public static long fingerprint(String sql) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sql.length(); i++) {
+            hash ^= sql.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void escape(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
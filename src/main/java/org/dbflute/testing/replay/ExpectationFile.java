@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Expectation file written by {@link ExpectationWriter}, read lazily.
+ *
+ * <p>
+ * Opening the file costs nothing. On first access, the file is memory-mapped and line offsets are indexed,
+ * and each {@link CBStructure} is parsed only when it is accessed.
+ * The structure set for {@link #contains(CBStructure)} is built on its first call.
+ * The file must be smaller than 2GB.
+ *
+ * <pre class="code"><code class="java">
+ * private static final ExpectationFile EXPECTED = ExpectationFile.open(new File("src/test/resources/member-service.cbx"));
+ *
+ * verify(mockBhv).selectList(argCB(MemberCB.class, recordedIn(EXPECTED)));
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class ExpectationFile implements Iterable<CBStructure> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private volatile Index index;
+    private volatile Map<CBStructure, Integer> positions;
+
+    private ExpectationFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the expectation file. The file is not read until accessed.
+     * @param file the expectation file
+     * @return the expectation file
+     */
+    public static ExpectationFile open(File file) {
+        return new ExpectationFile(file);
+    }
+
+    /**
+     * Returns the number of recorded structures.
+     * @return the number of structures
+     */
+    public int size() {
+        return index().size;
+    }
+
+    /**
+     * Returns the structure at {@code position}.
+     * @param position the position in the file (0-origin)
+     * @return the structure
+     * @throws IndexOutOfBoundsException {@code position} is out of range
+     */
+    public CBStructure get(int position) {
+        Index idx = index();
+        if (position < 0 || position >= idx.size) {
+            throw new IndexOutOfBoundsException("position " + position + " of " + idx.size);
+        }
+        int start = idx.starts[position];
+        int end = idx.ends[position];
+        ByteBuffer buffer = idx.buffer.duplicate();
+        byte[] bytes = new byte[end - start];
+        buffer.position(start);
+        buffer.get(bytes);
+        return CBStructure.parse(new String(bytes, UTF8));
+    }
+
+    /**
+     * Returns whether {@code structure} is recorded in this file.
+     * @param structure the structure
+     * @return {@code true} if recorded
+     */
+    public boolean contains(CBStructure structure) {
+        return positions().containsKey(structure);
+    }
+
+    /**
+     * Returns the first position where {@code structure} is recorded.
+     * @param structure the structure
+     * @return the position, or -1 if not recorded
+     */
+    public int indexOf(CBStructure structure) {
+        Integer position = positions().get(structure);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public Iterator<CBStructure> iterator() {
+        return new Iterator<CBStructure>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public CBStructure next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+
+    private Index index() {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    idx = buildIndex();
+                    index = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    private Index buildIndex() {
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read expectation file: " + file, e);
+        }
+        int[] starts = new int[1024];
+        int[] ends = new int[1024];
+        int size = 0;
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit ? buffer.get(i) != '\n' : lineStart == limit) {
+                // inside a line, or no last line without line separator
+                continue;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            int lineEnd = i;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            starts[size] = lineStart;
+            ends[size] = lineEnd;
+            size++;
+            lineStart = i + 1;
+        }
+        return new Index(buffer, starts, ends, size);
+    }
+
+    private Map<CBStructure, Integer> positions() {
+        Map<CBStructure, Integer> map = positions;
+        if (map == null) {
+            synchronized (this) {
+                map = positions;
+                if (map == null) {
+                    map = new HashMap<CBStructure, Integer>();
+                    for (int i = size() - 1; i >= 0; i--) {
+                        map.put(get(i), i);
+                    }
+                    positions = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    private static class Index {
+        final ByteBuffer buffer;
+        final int[] starts;
+        final int[] ends;
+        final int size;
+
+        Index(ByteBuffer buffer, int[] starts, int[] ends, int size) {
+            this.buffer = buffer;
+            this.starts = starts;
+            this.ends = ends;
+            this.size = size;
+        }
+    }
+}
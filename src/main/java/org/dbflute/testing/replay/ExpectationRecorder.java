@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.replay;
+
+import java.io.IOException;
+
+import org.dbflute.bhv.core.BehaviorCommandHook;
+import org.dbflute.bhv.core.BehaviorCommandMeta;
+import org.dbflute.cbean.ConditionBean;
+
+/**
+ * Behavior command hook that records the structure of every ConditionBean executed by real Behaviors.
+ *
+ * <p>
+ * Register it to DBFlute in an integration run, and use the written file as expectations of unit tests.
+ * <pre class="code"><code class="java">
+ * ExpectationWriter writer = new ExpectationWriter(new File("src/test/resources/member-service.cbx"));
+ * CallbackContext.setBehaviorCommandHookOnThread(new ExpectationRecorder(writer));
+ * try {
+ *     memberService.execute();
+ * } finally {
+ *     CallbackContext.clearBehaviorCommandHookOnThread();
+ *     writer.close();
+ * }
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class ExpectationRecorder implements BehaviorCommandHook {
+
+    private final ExpectationWriter writer;
+
+    /**
+     * Creates a new recorder.
+     * @param writer the writer of expectation file
+     */
+    public ExpectationRecorder(ExpectationWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void hookBefore(BehaviorCommandMeta meta) {
+        if (!meta.isConditionBean() || meta.isInitializeOnly()) {
+            return;
+        }
+        ConditionBean cb = meta.getConditionBean();
+        if (cb == null) {
+            return;
+        }
+        try {
+            writer.write(cb);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write expectation: " + meta.getTableDbName() + "." + meta.getCommandName(), e);
+        }
+    }
+
+    @Override
+    public void hookFinally(BehaviorCommandMeta meta, RuntimeException cause) {
+    }
+}
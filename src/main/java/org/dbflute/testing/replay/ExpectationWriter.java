@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.replay;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.dbflute.cbean.ConditionBean;
+
+/**
+ * Streaming writer of expectation file, one {@link CBStructure} per line.
+ *
+ * <p>
+ * Each structure is written as soon as it is given, so recording does not keep ConditionBeans in memory.
+ * This writer can be shared between threads.
+ *
+ * @author taktos
+ *
+ */
+public class ExpectationWriter implements Closeable, Flushable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Writer writer;
+    private long count;
+
+    /**
+     * Creates a new writer that appends to {@code file}, creating parent directories.
+     * @param file the expectation file
+     * @throws IOException failed to open the file
+     */
+    public ExpectationWriter(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), UTF8));
+    }
+
+    /**
+     * Writes the structure of {@code cb}.
+     * @param cb the ConditionBean
+     * @throws IOException failed to write
+     */
+    public void write(ConditionBean cb) throws IOException {
+        write(CBStructure.of(cb));
+    }
+
+    /**
+     * Writes {@code structure}.
+     * @param structure the structure
+     * @throws IOException failed to write
+     */
+    public synchronized void write(CBStructure structure) throws IOException {
+        writer.write(structure.toLine());
+        writer.write('\n');
+        count++;
+    }
+
+    /**
+     * Returns the number of structures written by this writer.
+     * @return the number of structures
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
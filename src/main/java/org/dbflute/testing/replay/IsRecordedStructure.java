@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.replay;
+
+import java.util.List;
+
+import org.dbflute.cbean.ConditionBean;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+
+/**
+ * Matches when the ConditionBean has the same structure as recorded one.
+ * The structure of a call materialized by {@link org.dbflute.testing.mock.CapturePolicy} is matched as well.
+ *
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ExpectationFile expected = ExpectationFile.open(new File("src/test/resources/member-service.cbx"));
+ * assertThat(cb, sameStructureAs(expected, 0));
+ * assertThat(cb, recordedIn(expected));
+ * }</pre>
+ *
+ * @param <T> the type of ConditionBean implementation
+ * @author taktos
+ *
+ */
+public class IsRecordedStructure<T extends ConditionBean> extends BaseMatcher<T> {
+
+    private final ExpectationFile file;
+    private final int position;
+    private final boolean withValues;
+
+    private IsRecordedStructure(ExpectationFile file, int position, boolean withValues) {
+        this.file = file;
+        this.position = position;
+        this.withValues = withValues;
+    }
+
+    @Override
+    public boolean matches(Object item) {
+        CBStructure actual = structureOf(item);
+        if (actual == null) {
+            return false;
+        }
+        if (position < 0) {
+            return file.contains(actual);
+        }
+        CBStructure expected = file.get(position);
+        return withValues ? actual.equalsWithValues(expected) : actual.equals(expected);
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(withValues ? "same structure and values as " : "same structure as ");
+        if (position < 0) {
+            description.appendText("any recorded in " + file);
+        } else {
+            description.appendText("#" + position + " of " + file);
+        }
+    }
+
+    @Override
+    public void describeMismatch(Object item, Description description) {
+        CBStructure actual = structureOf(item);
+        if (actual == null) {
+            description.appendText("was ").appendValue(item);
+            return;
+        }
+        if (position < 0) {
+            description.appendText("not recorded: ").appendText(actual.toString());
+            return;
+        }
+        List<String> diff = actual.diff(file.get(position));
+        if (diff.isEmpty()) {
+            description.appendText("parameter values differ");
+        } else {
+            description.appendValueList("", ", ", "", diff);
+        }
+    }
+
+    private static CBStructure structureOf(Object item) {
+        if (item instanceof CBStructure) {
+            return (CBStructure) item;
+        }
+        return item instanceof ConditionBean ? CBStructure.of((ConditionBean) item) : null;
+    }
+
+    /**
+     * Creates a matcher that matches when the structure is the same as the one at {@code position} in {@code file}.
+     * Parameter values are not compared.
+     * @param file the expectation file
+     * @param position the position in the file
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsRecordedStructure<T> sameStructureAs(ExpectationFile file, int position) {
+        return new IsRecordedStructure<T>(file, position, false);
+    }
+
+    /**
+     * Creates a matcher that matches when the structure and parameter values are the same as the one
+     * at {@code position} in {@code file}.
+     * @param file the expectation file
+     * @param position the position in the file
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsRecordedStructure<T> sameAs(ExpectationFile file, int position) {
+        return new IsRecordedStructure<T>(file, position, true);
+    }
+
+    /**
+     * Creates a matcher that matches when the structure is recorded anywhere in {@code file}.
+     * Parameter values are not compared.
+     * @param file the expectation file
+     * @param <T> the type of ConditionBean
+     */
+    public static <T extends ConditionBean> IsRecordedStructure<T> recordedIn(ExpectationFile file) {
+        return new IsRecordedStructure<T>(file, -1, false);
+    }
+}
@@ -16,9 +16,6 @@
 package org.dbflute.testing.rule;
 
 import java.sql.Timestamp;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.Date;
 
 import org.dbflute.hook.AccessContext;
 import org.dbflute.util.DfTypeUtil;
@@ -38,49 +35,9 @@ public class AccessContextInitializer implements TestRule {
     private String user;
     private String process;
     private String module;
-    private Timestamp timestamp;
+    private AccessTimeProvider timeProvider;
     private Timestamp defaultTimestamp;
 
-    private class AccessTimestampProvider implements AccessContext.AccessTimestampProvider {
-        @Override
-        public Timestamp provideTimestamp() {
-            if (timestamp == null) {
-                return new Timestamp(System.currentTimeMillis());
-            }
-            return timestamp;
-        }
-    }
-
-    private class AccessDateProvider implements AccessContext.AccessDateProvider {
-        @Override
-        public Date provideDate() {
-            if (timestamp == null) {
-                return new Date();
-            }
-            return new Date(timestamp.getTime());
-        }
-    }
-
-    private class AccessLocalDateProvider implements AccessContext.AccessLocalDateProvider {
-        @Override
-        public LocalDate provideLocalDate() {
-            if (timestamp == null) {
-                return LocalDate.now();
-            }
-            return timestamp.toLocalDateTime().toLocalDate();
-        }
-    }
-
-    private class AccessLocalDateTimeProvider implements AccessContext.AccessLocalDateTimeProvider {
-        @Override
-        public LocalDateTime provideLocalDateTime() {
-            if (timestamp == null) {
-                return LocalDateTime.now();
-            }
-            return timestamp.toLocalDateTime();
-        }
-    }
-
     /**
      * Creates a new rule with blank user and current timestamp.
      */
@@ -158,11 +115,8 @@ public class AccessContextInitializer implements TestRule {
                 accessContext.setAccessUser(user);
                 accessContext.setAccessProcess(process);
                 accessContext.setAccessModule(module);
-                timestamp = defaultTimestamp;
-                accessContext.setAccessDateProvider(new AccessDateProvider());
-                accessContext.setAccessTimestampProvider(new AccessTimestampProvider());
-                accessContext.setAccessLocalDateProvider(new AccessLocalDateProvider());
-                accessContext.setAccessLocalDateTimeProvider(new AccessLocalDateTimeProvider());
+                timeProvider = new AccessTimeProvider(defaultTimestamp);
+                timeProvider.install(accessContext);
                 AccessContext.setAccessContextOnThread(accessContext);
 
                 base.evaluate();
@@ -202,7 +156,7 @@ public class AccessContextInitializer implements TestRule {
      * @param timestamp the name of timestmap
      */
     public AccessContextInitializer timestamp(String timestamp) {
-        this.timestamp = DfTypeUtil.toTimestamp(timestamp);
+        this.timeProvider.setTimestamp(DfTypeUtil.toTimestamp(timestamp));
         return this;
     }
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import org.dbflute.hook.AccessContext;
+
+/**
+ * Provider of all access time types of AccessContext, from a fixed timestamp or the current time.
+ *
+ * <p>
+ * Used by {@link AccessContextInitializer}, {@link org.dbflute.testing.jupiter.DBFluteExtension}
+ * and {@link org.dbflute.testing.mock.ConcurrencyHarness}.
+ *
+ * @author taktos
+ *
+ */
+public class AccessTimeProvider implements AccessContext.AccessTimestampProvider, AccessContext.AccessDateProvider,
+        AccessContext.AccessLocalDateProvider, AccessContext.AccessLocalDateTimeProvider {
+
+    private volatile Timestamp timestamp;
+
+    /**
+     * Creates a new provider.
+     * @param timestamp the fixed timestamp, or {@code null} to provide the current time
+     */
+    public AccessTimeProvider(Timestamp timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sets this provider to all access time providers of {@code accessContext}.
+     * @param accessContext the access context
+     * @return {@code accessContext}
+     */
+    public AccessContext install(AccessContext accessContext) {
+        accessContext.setAccessTimestampProvider(this);
+        accessContext.setAccessDateProvider(this);
+        accessContext.setAccessLocalDateProvider(this);
+        accessContext.setAccessLocalDateTimeProvider(this);
+        return accessContext;
+    }
+
+    /**
+     * Changes the fixed timestamp.
+     * @param timestamp the fixed timestamp, or {@code null} to provide the current time
+     */
+    public void setTimestamp(Timestamp timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public Timestamp provideTimestamp() {
+        Timestamp fixed = timestamp;
+        return fixed == null ? new Timestamp(System.currentTimeMillis()) : fixed;
+    }
+
+    @Override
+    public Date provideDate() {
+        Timestamp fixed = timestamp;
+        return fixed == null ? new Date() : new Date(fixed.getTime());
+    }
+
+    @Override
+    public LocalDate provideLocalDate() {
+        Timestamp fixed = timestamp;
+        return fixed == null ? LocalDate.now() : fixed.toLocalDateTime().toLocalDate();
+    }
+
+    @Override
+    public LocalDateTime provideLocalDateTime() {
+        Timestamp fixed = timestamp;
+        return fixed == null ? LocalDateTime.now() : fixed.toLocalDateTime();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.dbflute.cbean.ConditionBean;
+import org.dbflute.dbmeta.DBMeta;
+import org.dbflute.dbmeta.info.ColumnInfo;
+import org.dbflute.dbmeta.info.ForeignInfo;
+import org.dbflute.helper.beans.factory.DfBeanDescFactory;
+import org.dbflute.testing.matcher.HasCondition;
+import org.dbflute.testing.mock.ConditionBeanFactory;
+import org.dbflute.util.DfReflectionUtil;
+import org.hamcrest.core.IsAnything;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Test rule that resolves DBMeta and accessor caches of all tables before tests.
+ *
+ * <p>
+ * The first test that touches a table pays for DBMeta lookup and introspection of
+ * ConditionQuery and SqlClause classes. This rule pays it once per JVM in parallel,
+ * by enumerating all DBMeta from the generated {@code DBMetaInstanceHandler}.
+ *
+ * <pre class="code"><code class="java">
+ * public class MemberServiceTest {
+ *     &#064;ClassRule
+ *     public static DBMetaWarmUp warmUp = new DBMetaWarmUp(DBMetaInstanceHandler.class);
+ * }
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class DBMetaWarmUp implements TestRule {
+
+    private static final ConcurrentMap<Class<?>, Boolean> WARMED_UP = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private final Class<?> instanceHandlerClass;
+    private final int parallelism;
+
+    /**
+     * Creates a new rule that uses all available processors.
+     * @param instanceHandlerClass the class of generated {@code DBMetaInstanceHandler}
+     */
+    public DBMetaWarmUp(Class<?> instanceHandlerClass) {
+        this(instanceHandlerClass, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new rule.
+     * @param instanceHandlerClass the class of generated {@code DBMetaInstanceHandler}
+     * @param parallelism the number of threads to warm up
+     */
+    public DBMetaWarmUp(Class<?> instanceHandlerClass, int parallelism) {
+        this.instanceHandlerClass = instanceHandlerClass;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                warmUp();
+                base.evaluate();
+            }
+        };
+    }
+
+    /**
+     * Resolves DBMeta and accessor caches of all tables. This does nothing if already done in this JVM.
+     */
+    public void warmUp() {
+        if (WARMED_UP.putIfAbsent(instanceHandlerClass, Boolean.TRUE) != null) {
+            return;
+        }
+        boolean completed = false;
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final DBMeta meta : findAllDBMeta()) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        warmUp(meta);
+                        return null;
+                    }
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+                completed = true;
+            } catch (InterruptedException e) {
+                // not finished, so the next call warms up again
+                WARMED_UP.remove(instanceHandlerClass);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to warm up DBMeta.", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            if (!completed) {
+                WARMED_UP.remove(instanceHandlerClass);
+            }
+        }
+    }
+
+    /**
+     * Resolves caches of one table.
+     * @param meta the DBMeta of the table
+     */
+    protected void warmUp(DBMeta meta) {
+        List<ColumnInfo> columns = meta.getColumnInfoList();
+        for (ColumnInfo column : columns) {
+            meta.findColumnInfo(column.getPropertyName());
+        }
+        for (ForeignInfo foreign : meta.getForeignInfoList()) {
+            meta.findForeignInfo(foreign.getForeignPropertyName());
+        }
+        meta.getReferrerInfoList();
+        meta.getUniqueInfoList();
+
+        Class<ConditionBean> cbClass = findConditionBeanClass(meta);
+        if (cbClass == null) {
+            return;
+        }
+        ConditionBean cb = ConditionBeanFactory.of(cbClass).create();
+        DfBeanDescFactory.getBeanDesc(cb.localCQ().getClass());
+        DfBeanDescFactory.getBeanDesc(cb.getSqlClause().getClass());
+        if (!columns.isEmpty()) {
+            // goes through the same path as assertions
+            HasCondition.hasCondition(columns.get(0).getPropertyName(), IsAnything.anything()).matches(cb);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<DBMeta> findAllDBMeta() {
+        Method method = DfReflectionUtil.getPublicMethod(instanceHandlerClass, "getUnmodifiableDBMetaMap", null);
+        if (method == null) {
+            throw new IllegalArgumentException("Not a DBMetaInstanceHandler: " + instanceHandlerClass.getName());
+        }
+        Map<String, DBMeta> map = (Map<String, DBMeta>) DfReflectionUtil.invokeStatic(method, null);
+        return map.values();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<ConditionBean> findConditionBeanClass(DBMeta meta) {
+        String typeName = meta.getConditionBeanTypeName();
+        if (typeName == null) {
+            return null;
+        }
+        try {
+            return (Class<ConditionBean>) Class.forName(typeName, true, instanceHandlerClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // no ConditionBean for the table (e.g. no behavior generated)
+            return null;
+        }
+    }
+}
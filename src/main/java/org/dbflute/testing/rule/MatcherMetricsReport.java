@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.io.File;
+
+import org.dbflute.testing.metrics.MatcherMetrics;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Test rule that writes matcher metrics recorded during the tests as JSON.
+ *
+ * <p>
+ * This rule does nothing unless {@link MatcherMetrics} is enabled by system property.
+ * As {@code @ClassRule}, the report covers the whole class.
+ *
+ * <pre class="code"><code class="java">
+ * public class MemberServiceTest {
+ *     &#064;ClassRule
+ *     public static MatcherMetricsReport metrics = new MatcherMetricsReport();
+ * }
+ * </code></pre>
+ *
+ * @author taktos
+ *
+ */
+public class MatcherMetricsReport implements TestRule {
+
+    private static final String DEFAULT_DIRECTORY = "target/matcher-metrics";
+
+    private final File directory;
+
+    /**
+     * Creates a new rule that writes to {@code target/matcher-metrics/<test class name>.json}.
+     */
+    public MatcherMetricsReport() {
+        this(new File(DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * Creates a new rule that writes to {@code <directory>/<test class name>.json}.
+     * @param directory the directory of reports
+     */
+    public MatcherMetricsReport(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        if (!MatcherMetrics.ENABLED) {
+            return base;
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                MatcherMetrics.Snapshot before = MatcherMetrics.snapshot();
+                try {
+                    base.evaluate();
+                } finally {
+                    String name = description.getClassName();
+                    if (description.getMethodName() != null) {
+                        name += "." + description.getMethodName();
+                    }
+                    MatcherMetrics.snapshot().since(before).write(new File(directory, name + ".json"));
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Test rule that runs each test in a transaction on an embedded database and rolls it back after the test.
+ *
+ * <p>
+ * The schema is created once per JVM and URL from SQL scripts, e.g. DBFlute's {@code playsql/replace-schema.sql}.
+ * Connections are pooled per URL and reused by following tests, so a test pays neither schema creation nor connect.
+ * The database is specified by JDBC URL, so any in-process database on the test classpath can be used
+ * (e.g. H2 {@code jdbc:h2:mem:test;DB_CLOSE_DELAY=-1}).
+ *
+ * <pre class="code"><code class="java">
+ * &#064;DatabaseTests
+ * public class MemberBhvTest {
+ *     &#064;Rule
+ *     public RollbackDatabase database = new RollbackDatabase("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1",
+ *             "dbflute_exampledb/playsql/replace-schema.sql");
+ *
+ *     &#064;Test
+ *     public void test() {
+ *         MemberBhv bhv = newBehavior(database.getDataSource());
+ *         ...
+ *     }
+ * }
+ * </code></pre>
+ *
+ * <p>
+ * {@link #getDataSource()} returns the connection of the current test for every request, and ignores {@code close()},
+ * so DBFlute behaviors run inside the test transaction.
+ * A test that commits is not isolated by this rule; use {@link TemplateDatabase} for such tests.
+ *
+ * @author taktos
+ *
+ */
+public class RollbackDatabase implements TestRule {
+
+    private static final ConcurrentMap<String, Boolean> INITIALIZED = new ConcurrentHashMap<String, Boolean>();
+    private static final ConcurrentMap<String, Throwable> FAILED = new ConcurrentHashMap<String, Throwable>();
+    private static final ConcurrentMap<String, ConcurrentLinkedDeque<Connection>> IDLE = new ConcurrentHashMap<String, ConcurrentLinkedDeque<Connection>>();
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String[] schemaScripts;
+
+    private Connection connection;
+    private Connection connectionProxy;
+
+    /**
+     * Creates a new rule.
+     * @param url the JDBC URL of the embedded database
+     * @param schemaScripts the locations of SQL scripts to create the schema, in classpath or file system
+     */
+    public RollbackDatabase(String url, String... schemaScripts) {
+        this(url, null, null, schemaScripts);
+    }
+
+    /**
+     * Creates a new rule.
+     * @param url the JDBC URL of the embedded database
+     * @param user the user of the database
+     * @param password the password of the user
+     * @param schemaScripts the locations of SQL scripts to create the schema, in classpath or file system
+     */
+    public RollbackDatabase(String url, String user, String password, String... schemaScripts) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.schemaScripts = schemaScripts;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                initialize();
+                connection = acquire();
+                connectionProxy = TestDataSource.unclosable(connection);
+                try {
+                    base.evaluate();
+                } finally {
+                    release(connection);
+                    connection = null;
+                    connectionProxy = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the connection of the current test. It is rolled back after the test, and {@code close()} is ignored.
+     * @return the connection
+     * @throws IllegalStateException called outside of test
+     */
+    public Connection getConnection() {
+        if (connectionProxy == null) {
+            throw new IllegalStateException("No connection outside of test.");
+        }
+        return connectionProxy;
+    }
+
+    /**
+     * Returns a DataSource that always returns the connection of the current test.
+     * @return the DataSource
+     */
+    public DataSource getDataSource() {
+        return new TestDataSource() {
+            @Override
+            public Connection getConnection() {
+                return RollbackDatabase.this.getConnection();
+            }
+        };
+    }
+
+    /**
+     * Creates the schema if not yet created in this JVM.
+     * If a script fails, the connection is closed instead of pooled, and following tests of the URL fail fast
+     * rather than running the scripts again on a half-initialized schema.
+     * @throws SQLException failed to create the schema
+     * @throws IllegalStateException the schema of the URL failed to be created by a previous test
+     */
+    protected void initialize() throws SQLException {
+        if (INITIALIZED.containsKey(url)) {
+            return;
+        }
+        synchronized (INITIALIZED) {
+            if (INITIALIZED.containsKey(url)) {
+                return;
+            }
+            Throwable failure = FAILED.get(url);
+            if (failure != null) {
+                throw new IllegalStateException("The schema of " + url + " failed to be created by a previous test.", failure);
+            }
+            Connection conn = open();
+            boolean succeeded = false;
+            try {
+                conn.setAutoCommit(true);
+                for (String location : schemaScripts) {
+                    SqlScript.load(location).execute(conn);
+                }
+                succeeded = true;
+            } catch (SQLException e) {
+                FAILED.put(url, e);
+                throw e;
+            } catch (RuntimeException e) {
+                FAILED.put(url, e);
+                throw e;
+            } finally {
+                if (succeeded) {
+                    // keep it open so that in-memory database survives
+                    idle().offer(conn);
+                } else {
+                    conn.close();
+                }
+            }
+            INITIALIZED.put(url, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Opens a new physical connection.
+     * @return the connection
+     * @throws SQLException failed to connect
+     */
+    protected Connection open() throws SQLException {
+        if (user == null) {
+            return DriverManager.getConnection(url);
+        }
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private Connection acquire() throws SQLException {
+        ConcurrentLinkedDeque<Connection> idle = idle();
+        Connection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            if (!conn.isClosed()) {
+                break;
+            }
+        }
+        if (conn == null) {
+            conn = open();
+        }
+        conn.setAutoCommit(false);
+        return conn;
+    }
+
+    private void release(Connection conn) throws SQLException {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        idle().offerFirst(conn);
+    }
+
+    private ConcurrentLinkedDeque<Connection> idle() {
+        ConcurrentLinkedDeque<Connection> deque = IDLE.get(url);
+        if (deque == null) {
+            deque = new ConcurrentLinkedDeque<Connection>();
+            ConcurrentLinkedDeque<Connection> existing = IDLE.putIfAbsent(url, deque);
+            if (existing != null) {
+                deque = existing;
+            }
+        }
+        return deque;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQL script such as DBFlute's {@code playsql/replace-schema.sql}, split into statements.
+ *
+ * @author taktos
+ *
+ */
+final class SqlScript {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String location;
+    private final List<String> statements;
+
+    private SqlScript(String location, List<String> statements) {
+        this.location = location;
+        this.statements = Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Loads the script from classpath, or from file system if not found in classpath.
+     * @param location the location of the script
+     * @return the loaded script
+     * @throws IllegalArgumentException the script is not found or cannot be read
+     */
+    static SqlScript load(String location) {
+        try {
+            InputStream in = SqlScript.class.getClassLoader().getResourceAsStream(location);
+            if (in == null) {
+                File file = new File(location);
+                if (!file.isFile()) {
+                    throw new IllegalArgumentException("SQL script not found: " + location);
+                }
+                in = new FileInputStream(file);
+            }
+            try {
+                return new SqlScript(location, split(read(in)));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read SQL script: " + location, e);
+        }
+    }
+
+    /**
+     * Executes all statements on {@code connection}.
+     * @param connection the connection
+     * @throws SQLException a statement failed
+     */
+    void execute(Connection connection) throws SQLException {
+        Statement st = connection.createStatement();
+        try {
+            for (String sql : statements) {
+                try {
+                    st.execute(sql);
+                } catch (SQLException e) {
+                    throw new SQLException("Failed to execute " + location + ": " + sql, e.getSQLState(), e);
+                }
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    List<String> getStatements() {
+        return statements;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, length);
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    /**
+     * Splits script by semicolons, skipping comments and semicolons in literals.
+     */
+    static List<String> split(String script) {
+        List<String> list = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        int length = script.length();
+        for (int i = 0; i < length; i++) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : '\0';
+            if (c == '-' && next == '-') {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? length : end;
+                sb.append('\n');
+            } else if (c == '/' && next == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 1;
+                sb.append(' ');
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (end < length && script.charAt(end) != c) {
+                    end++;
+                }
+                sb.append(script, i, Math.min(end + 1, length));
+                i = end;
+            } else if (c == ';') {
+                addStatement(list, sb);
+            } else {
+                sb.append(c);
+            }
+        }
+        addStatement(list, sb);
+        return list;
+    }
+
+    private static void addStatement(List<String> list, StringBuilder sb) {
+        String sql = sb.toString().trim();
+        if (!sql.isEmpty()) {
+            list.add(sql);
+        }
+        sb.setLength(0);
+    }
+}
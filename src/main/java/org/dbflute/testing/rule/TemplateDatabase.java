@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.rule;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.dbflute.testing.category.DatabaseTests;
+import org.dbflute.testing.category.TestCategories;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Test rule that gives each test its own in-memory database cloned from a template.
+ *
+ * <p>
+ * The template is built once per JVM from schema and fixture scripts, and its statements are cached.
+ * Each test gets a new database of a unique URL populated by replaying them, and the database is dropped after the test.
+ * So tests may commit, and test classes can run in parallel without sharing state.
+ * The test class must be in the category {@link DatabaseTests}, so that these tests are included or excluded
+ * together with other database tests (see {@link TestCategories#isDatabaseTest(Class)}).
+ *
+ * <pre class="code"><code class="java">
+ * &#064;Category(DatabaseTests.class)
+ * public class MemberServiceTest {
+ *     &#064;Rule
+ *     public TemplateDatabase database = new TemplateDatabase("jdbc:h2:mem:member{id}",
+ *             "dbflute_exampledb/playsql/replace-schema.sql", "fixture/member.sql");
+ * }
+ * </code></pre>
+ *
+ * <p>
+ * The URL must contain <code>{id}</code>, which is replaced with a sequence number per test.
+ * Do not keep the database open after its last connection is closed (e.g. H2's {@code DB_CLOSE_DELAY=-1}),
+ * or the clones are not released.
+ * Replaying statements works for any database. To copy the template in a database-specific way
+ * (e.g. from a snapshot file), override {@link #populate(Connection, List)}.
+ *
+ * @author taktos
+ *
+ */
+public class TemplateDatabase implements TestRule {
+
+    private static final String ID_PLACEHOLDER = "{id}";
+    private static final ConcurrentMap<List<String>, List<String>> TEMPLATES = new ConcurrentHashMap<List<String>, List<String>>();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String urlPattern;
+    private final String user;
+    private final String password;
+    private final List<String> scripts;
+
+    private Connection connectionProxy;
+
+    /**
+     * Creates a new rule.
+     * @param urlPattern the JDBC URL of in-memory database that contains <code>{id}</code>
+     * @param scripts the locations of schema and fixture scripts, in classpath or file system
+     * @throws IllegalArgumentException {@code urlPattern} does not contain <code>{id}</code>
+     */
+    public TemplateDatabase(String urlPattern, String... scripts) {
+        this(urlPattern, null, null, scripts);
+    }
+
+    /**
+     * Creates a new rule.
+     * @param urlPattern the JDBC URL of in-memory database that contains <code>{id}</code>
+     * @param user the user of the database
+     * @param password the password of the user
+     * @param scripts the locations of schema and fixture scripts, in classpath or file system
+     * @throws IllegalArgumentException {@code urlPattern} does not contain <code>{id}</code>
+     */
+    public TemplateDatabase(String urlPattern, String user, String password, String... scripts) {
+        if (!urlPattern.contains(ID_PLACEHOLDER)) {
+            throw new IllegalArgumentException("URL must contain " + ID_PLACEHOLDER + ": " + urlPattern);
+        }
+        this.urlPattern = urlPattern;
+        this.user = user;
+        this.password = password;
+        this.scripts = Collections.unmodifiableList(Arrays.asList(scripts));
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Class<?> testClass = description.getTestClass();
+                if (testClass != null && !TestCategories.isDatabaseTest(testClass)) {
+                    throw new IllegalStateException(testClass.getName() + " must be in @Category(DatabaseTests.class)");
+                }
+                List<String> template = template();
+                Connection connection = open(urlPattern.replace(ID_PLACEHOLDER, String.valueOf(SEQUENCE.incrementAndGet())));
+                try {
+                    populate(connection, template);
+                    connectionProxy = TestDataSource.unclosable(connection);
+                    base.evaluate();
+                } finally {
+                    connectionProxy = null;
+                    connection.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the connection to the database of the current test. {@code close()} is ignored.
+     * @return the connection
+     * @throws IllegalStateException called outside of test
+     */
+    public Connection getConnection() {
+        if (connectionProxy == null) {
+            throw new IllegalStateException("No connection outside of test.");
+        }
+        return connectionProxy;
+    }
+
+    /**
+     * Returns a DataSource that always returns the connection of the current test.
+     * @return the DataSource
+     */
+    public DataSource getDataSource() {
+        return new TestDataSource() {
+            @Override
+            public Connection getConnection() {
+                return TemplateDatabase.this.getConnection();
+            }
+        };
+    }
+
+    /**
+     * Copies the template into a new database by replaying its statements.
+     * @param connection the connection to the new database
+     * @param statements the statements of the template
+     * @throws SQLException failed to copy
+     */
+    protected void populate(Connection connection, List<String> statements) throws SQLException {
+        connection.setAutoCommit(false);
+        java.sql.Statement st = connection.createStatement();
+        try {
+            for (String sql : statements) {
+                st.execute(sql);
+            }
+        } finally {
+            st.close();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    /**
+     * Opens a new physical connection.
+     * @param url the JDBC URL
+     * @return the connection
+     * @throws SQLException failed to connect
+     */
+    protected Connection open(String url) throws SQLException {
+        if (user == null) {
+            return DriverManager.getConnection(url);
+        }
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    /**
+     * Builds the template once per JVM: loads all scripts and verifies them on a database.
+     */
+    private List<String> template() throws SQLException {
+        List<String> template = TEMPLATES.get(scripts);
+        if (template != null) {
+            return template;
+        }
+        synchronized (TEMPLATES) {
+            template = TEMPLATES.get(scripts);
+            if (template != null) {
+                return template;
+            }
+            List<String> statements = new ArrayList<String>();
+            for (String location : scripts) {
+                statements.addAll(SqlScript.load(location).getStatements());
+            }
+            template = Collections.unmodifiableList(statements);
+            Connection connection = open(urlPattern.replace(ID_PLACEHOLDER, "template"));
+            try {
+                populate(connection, template);
+            } finally {
+                connection.close();
+            }
+            TEMPLATES.put(scripts, template);
+            return template;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Toshio Takiguchi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.dbflute.testing.matcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing of or-scope groups from where clauses.
+ *
+ * @author taktos
+ *
+ */
+public class OrScopeQueryTest {
+
+    private static List<OrScopeQuery> parse(String where) {
+        Map<String, String> aliasPaths = new HashMap<String, String>();
+        aliasPaths.put("dfloc", "");
+        aliasPaths.put("dfrel_0", "memberStatus.");
+        return OrScopeQuery.parse(where, aliasPaths);
+    }
+
+    @Test
+    public void parsesBranchesOfTopLevelOrScope() {
+        List<OrScopeQuery> list = parse("where (dfloc.MEMBER_ID = /*pmb.conditionQuery.memberId.varying.equal.equal0*/1"
+                + " or dfloc.MEMBER_NAME like /*pmb.conditionQuery.memberName.varying.likeSearch.likeSearch0*/'S%' escape '|')"
+                + " and dfloc.BIRTHDATE is not null");
+
+        assertThat(list, hasSize(1));
+        List<List<OrScopeQuery.Predicate>> branches = list.get(0).getBranches();
+        assertThat(branches, hasSize(2));
+        assertThat(branches.get(0).get(0).getColumnName(), is("MEMBER_ID"));
+        assertThat(branches.get(0).get(0).getOperator(), is("="));
+        assertThat(branches.get(1).get(0).getColumnName(), is("MEMBER_NAME"));
+        assertThat(branches.get(1).get(0).getOperator(), is("like"));
+        assertThat(list.get(0).getPath(), is(""));
+    }
+
+    @Test
+    public void ignoresWhereClauseWithoutOrScope() {
+        assertThat(parse("where dfloc.MEMBER_ID = 1 and dfloc.MEMBER_NAME like 'S%' escape '|'"), is(empty()));
+    }
+
+    @Test
+    public void addsPredicatesOfNestedScopesToBranch() {
+        List<OrScopeQuery> list = parse("where (dfloc.A = 1 or (dfloc.B = 2 and (dfloc.C = 3 or dfloc.D = 4)))");
+
+        assertThat(list, hasSize(1));
+        List<List<OrScopeQuery.Predicate>> branches = list.get(0).getBranches();
+        assertThat(branches, hasSize(2));
+        assertThat(branches.get(0), hasSize(1));
+        assertThat(columnNames(branches.get(1)), contains("B", "C", "D"));
+    }
+
+    @Test
+    public void doesNotSplitInQuotes() {
+        List<OrScopeQuery> list = parse("where (dfloc.NAME = 'x or y' or dfloc.CODE = 'a) and (b')");
+
+        assertThat(list, hasSize(1));
+        assertThat(list.get(0).getBranches(), hasSize(2));
+        assertThat(list.get(0).getColumns(), contains("NAME", "CODE"));
+    }
+
+    @Test
+    public void doesNotSplitInComments() {
+        List<OrScopeQuery> list = parse("where (dfloc.A = /* or ) */1 or dfloc.B = /*pmb.b*/2)");
+
+        assertThat(list, hasSize(1));
+        assertThat(list.get(0).getColumns(), contains("A", "B"));
+    }
+
+    @Test
+    public void keepsSubQueryClauseAsOnePredicate() {
+        List<OrScopeQuery> list = parse("where (dfloc.MEMBER_ID in (select sub1loc.MEMBER_ID from PURCHASE sub1loc"
+                + " where sub1loc.A = 1 or sub1loc.B = 2) or dfloc.X = 3)");
+
+        assertThat(list, hasSize(1));
+        List<List<OrScopeQuery.Predicate>> branches = list.get(0).getBranches();
+        assertThat(branches, hasSize(2));
+        assertThat(branches.get(0), hasSize(1));
+        assertThat(branches.get(0).get(0).getOperator(), is(nullValue()));
+        assertThat(branches.get(1).get(0).getColumnName(), is("X"));
+    }
+
+    @Test
+    public void mapsAliasToRelationPath() {
+        List<OrScopeQuery> list = parse("where (dfrel_0.MEMBER_STATUS_NAME = 'x' or dfloc.MEMBER_NAME = 'y')");
+
+        assertThat(list.get(0).getColumns(), contains("memberStatus.MEMBER_STATUS_NAME", "MEMBER_NAME"));
+    }
+
+    @Test
+    public void splitsOnlyAtKeywordSeparatedByWhitespace() {
+        assertThat(OrScopeQuery.split("dfloc.A = 1 or ordinal = 2 OR\tdfloc.ANDROID = 3", "or"),
+                contains("dfloc.A = 1", "ordinal = 2", "dfloc.ANDROID = 3"));
+    }
+
+    @Test
+    public void unwrapsOnlyEnclosingParentheses() {
+        assertThat(OrScopeQuery.unwrap(" ((a = 1) and (b = 2)) "), is("(a = 1) and (b = 2)"));
+        assertThat(OrScopeQuery.unwrap("(a = 1) and (b = 2)"), is("(a = 1) and (b = 2)"));
+        assertThat(OrScopeQuery.unwrap("(a = ')')"), is("a = ')'"));
+    }
+
+    private static List<String> columnNames(List<OrScopeQuery.Predicate> branch) {
+        List<String> names = new ArrayList<String>();
+        for (OrScopeQuery.Predicate predicate : branch) {
+            names.add(predicate.getColumnName());
+        }
+        return names;
+    }
+}